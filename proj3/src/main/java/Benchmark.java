@@ -0,0 +1,480 @@
+import org.xml.sax.Attributes;
+import org.xml.sax.SAXException;
+import org.xml.sax.helpers.DefaultHandler;
+
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.zip.GZIPOutputStream;
+import javax.imageio.ImageIO;
+import javax.xml.parsers.ParserConfigurationException;
+import javax.xml.parsers.SAXParser;
+import javax.xml.parsers.SAXParserFactory;
+
+/**
+ * This class provides a main method for timing parts of the BearMaps back end on a
+ * real map, in the same spirit as GraphDBLauncher.
+ * Usage: Benchmark [name] [osmPath], where name is one of the benchmarks below or "all".
+ */
+public class Benchmark {
+    private static final String OSM_DB_PATH = "../library-sp18/data/berkeley-2018.osm.xml";
+    private static final int NUM_QUERIES = 10000;
+    private static final int NUM_ROUTES = 200;
+    private static final long SEED = 61;
+    private static final int RASTER_DEPTH = 7;
+    private static final int RASTER_REPEATS = 5;
+    private static final int MAX_PREFIX_LENGTH = 4;
+    private static final int AUTOCOMPLETE_LIMIT = 10;
+
+    public static void main(String[] args) {
+        String name = args.length > 0 ? args[0] : "all";
+        String osmPath = args.length > 1 ? args[1] : OSM_DB_PATH;
+        GraphDB g = new GraphDB(osmPath);
+        System.out.println("Loaded " + g.compactGraph().size() + " vertices from " + osmPath);
+
+        if (name.equals("all") || name.equals("closest")) {
+            benchmarkClosest(g);
+        }
+        if (name.equals("all") || name.equals("bidirectional")) {
+            benchmarkBidirectional(g);
+        }
+        if (name.equals("all") || name.equals("relax")) {
+            benchmarkRelaxations(g);
+        }
+        if (name.equals("all") || name.equals("time")) {
+            benchmarkTravelTime(g);
+        }
+        if (name.equals("all") || name.equals("ch")) {
+            benchmarkContractionHierarchy(g);
+        }
+        if (name.equals("all") || name.equals("alt")) {
+            benchmarkLandmarks(g);
+        }
+        if (name.equals("all") || name.equals("raster")) {
+            benchmarkRaster();
+        }
+        if (name.equals("all") || name.equals("autocomplete")) {
+            benchmarkAutocomplete(g);
+        }
+        if (name.equals("all") || name.equals("ingest")) {
+            benchmarkIngest(osmPath);
+        }
+    }
+
+    /**
+     * Compares snapping random points in the map's bounding box with the k-d tree against
+     * the linear scan GraphDB.closest used before.
+     */
+    private static void benchmarkClosest(GraphDB g) {
+        CompactGraph cg = g.compactGraph();
+        double[][] points = randomPoints(NUM_QUERIES);
+
+        long start = System.nanoTime();
+        long checksum = 0;
+        for (double[] p : points) {
+            checksum += g.closest(p[0], p[1]);
+        }
+        long indexed = System.nanoTime() - start;
+
+        int scanned = Math.min(NUM_QUERIES, 1000);
+        start = System.nanoTime();
+        for (int i = 0; i < scanned; i++) {
+            checksum -= closestByScan(cg, points[i][0], points[i][1]);
+        }
+        long linear = System.nanoTime() - start;
+
+        System.out.println("closest: k-d tree " + micros(indexed, NUM_QUERIES)
+                + " us/query, linear scan " + micros(linear, scanned) + " us/query"
+                + " (checksum " + checksum + ")");
+    }
+
+    /**
+     * Compares unidirectional and bidirectional A* on routes between random points.
+     */
+    private static void benchmarkBidirectional(GraphDB g) {
+        long[][] routes = randomRoutes(g, NUM_ROUTES);
+        long settledForward = 0;
+        long settledBidirectional = 0;
+
+        long start = System.nanoTime();
+        for (long[] r : routes) {
+            settledForward += Router.astarSearch(g, r[0], r[1]).settled;
+        }
+        long forward = System.nanoTime() - start;
+
+        start = System.nanoTime();
+        for (long[] r : routes) {
+            settledBidirectional += Router.bidirectionalSearch(g, r[0], r[1]).settled;
+        }
+        long bidirectional = System.nanoTime() - start;
+
+        System.out.println("A*: " + settledForward / NUM_ROUTES + " settled, "
+                + micros(forward, NUM_ROUTES) + " us/route");
+        System.out.println("bidirectional A*: " + settledBidirectional / NUM_ROUTES
+                + " settled, " + micros(bidirectional, NUM_ROUTES) + " us/route");
+    }
+
+    /**
+     * Compares the cost of relaxing an edge in A* as it was, with the great-circle length of
+     * the edge and the great-circle distance to the target computed on the spot, with the
+     * precomputed edge length and the projected lower bound, over all edges of the graph.
+     */
+    private static void benchmarkRelaxations(GraphDB g) {
+        CompactGraph cg = g.compactGraph();
+        if (cg.size() == 0) {
+            return;
+        }
+        Random random = new Random(SEED);
+        int rounds = Math.max(1, 2000000 / cg.numEdges());
+        int[] targets = new int[rounds];
+        for (int i = 0; i < rounds; i++) {
+            targets[i] = random.nextInt(cg.size());
+        }
+        double checksum = 0;
+        long start = System.nanoTime();
+        for (int target : targets) {
+            for (int v = 0; v < cg.size(); v++) {
+                for (int e = cg.edgeStart(v); e < cg.edgeEnd(v); e++) {
+                    int w = cg.target(e);
+                    checksum += GraphDB.distance(cg.lon(v), cg.lat(v), cg.lon(w), cg.lat(w))
+                            + GraphDB.distance(cg.lon(w), cg.lat(w),
+                            cg.lon(target), cg.lat(target));
+                }
+            }
+        }
+        long before = System.nanoTime() - start;
+        start = System.nanoTime();
+        for (int target : targets) {
+            for (int v = 0; v < cg.size(); v++) {
+                for (int e = cg.edgeStart(v); e < cg.edgeEnd(v); e++) {
+                    checksum -= cg.length(e) + cg.lowerBound(cg.target(e), target);
+                }
+            }
+        }
+        long after = System.nanoTime() - start;
+        long relaxations = (long) rounds * cg.numEdges();
+        System.out.println("relaxations: " + String.format("%.1f", relaxations * 1e3 / before)
+                + " M/s computing great-circle distances, "
+                + String.format("%.1f", relaxations * 1e3 / after)
+                + " M/s with precomputed lengths and the projected bound (checksum "
+                + String.format("%.3f", checksum) + ")");
+    }
+
+    /**
+     * Compares A* minimizing distance with A* minimizing travel time, on the same routes.
+     */
+    private static void benchmarkTravelTime(GraphDB g) {
+        long[][] routes = randomRoutes(g, NUM_ROUTES);
+        long settledDistance = 0;
+        long settledTime = 0;
+        long start = System.nanoTime();
+        for (long[] r : routes) {
+            settledDistance += Router.astarSearch(g, r[0], r[1]).settled;
+        }
+        long distance = System.nanoTime() - start;
+        start = System.nanoTime();
+        for (long[] r : routes) {
+            settledTime += Router.fastestSearch(g, r[0], r[1]).settled;
+        }
+        long time = System.nanoTime() - start;
+        System.out.println("A* by distance: " + settledDistance / NUM_ROUTES + " settled, "
+                + micros(distance, NUM_ROUTES) + " us/route");
+        System.out.println("A* by travel time: " + settledTime / NUM_ROUTES + " settled, "
+                + micros(time, NUM_ROUTES) + " us/route");
+    }
+
+    /**
+     * Times contraction hierarchy preprocessing, and compares its queries with A*.
+     */
+    private static void benchmarkContractionHierarchy(GraphDB g) {
+        long start = System.nanoTime();
+        ContractionHierarchy ch = ContractionHierarchy.build(g.compactGraph());
+        long built = System.nanoTime() - start;
+        System.out.println("CH: preprocessed in " + built / 1000000 + " ms, "
+                + ch.numShortcuts() + " shortcuts");
+
+        long[][] routes = randomRoutes(g, NUM_ROUTES);
+        long settledAstar = 0;
+        long settledCh = 0;
+        start = System.nanoTime();
+        for (long[] r : routes) {
+            settledAstar += Router.astarSearch(g, r[0], r[1]).settled;
+        }
+        long astar = System.nanoTime() - start;
+        start = System.nanoTime();
+        for (long[] r : routes) {
+            settledCh += ch.search(r[0], r[1]).settled;
+        }
+        long query = System.nanoTime() - start;
+
+        System.out.println("A*: " + settledAstar / NUM_ROUTES + " settled, "
+                + micros(astar, NUM_ROUTES) + " us/route");
+        System.out.println("CH: " + settledCh / NUM_ROUTES + " settled, "
+                + micros(query, NUM_ROUTES) + " us/route");
+    }
+
+    /**
+     * Compares settled vertices of A* with the distance lower bound heuristic and with ALT, for
+     * a few numbers of landmarks.
+     */
+    private static void benchmarkLandmarks(GraphDB g) {
+        long[][] routes = randomRoutes(g, NUM_ROUTES);
+        long settled = 0;
+        long start = System.nanoTime();
+        for (long[] r : routes) {
+            settled += Router.astarSearch(g, r[0], r[1]).settled;
+        }
+        long time = System.nanoTime() - start;
+        System.out.println("A* (distance bound): " + settled / NUM_ROUTES + " settled, "
+                + micros(time, NUM_ROUTES) + " us/route");
+
+        for (int k : new int[]{4, 8, 16}) {
+            start = System.nanoTime();
+            Landmarks landmarks = Landmarks.select(g.compactGraph(), k);
+            long selected = System.nanoTime() - start;
+            settled = 0;
+            start = System.nanoTime();
+            for (long[] r : routes) {
+                settled += Router.astarSearch(g, landmarks, r[0], r[1]).settled;
+            }
+            time = System.nanoTime() - start;
+            System.out.println("A* (ALT, " + k + " landmarks, selected in "
+                    + selected / 1000000 + " ms): " + settled / NUM_ROUTES + " settled, "
+                    + micros(time, NUM_ROUTES) + " us/route");
+        }
+    }
+
+    /**
+     * Times composing and encoding rasters of n by n tiles at the deepest depth, with tiles
+     * loaded from disk and from the tile cache, and compares the PNG compression MapServer
+     * uses with ImageIO's default.
+     */
+    private static void benchmarkRaster() {
+        Rasterer rasterer = new Rasterer();
+        int depth = RASTER_DEPTH;
+        double tileLon = (MapServer.ROOT_LRLON - MapServer.ROOT_ULLON) / (1 << depth);
+        double tileLat = (MapServer.ROOT_ULLAT - MapServer.ROOT_LRLAT) / (1 << depth);
+        for (int n : new int[]{1, 2, 4, 8}) {
+            // Slightly less than n tiles of query box and n * TILE_SIZE pixels of window.
+            Map<String, Double> params = new HashMap<>();
+            params.put("ullon", MapServer.ROOT_ULLON);
+            params.put("ullat", MapServer.ROOT_ULLAT);
+            params.put("lrlon", MapServer.ROOT_ULLON + n * tileLon * (1 - 1e-9));
+            params.put("lrlat", MapServer.ROOT_ULLAT - n * tileLat * (1 - 1e-9));
+            params.put("w", n * MapServer.TILE_SIZE - 1.0);
+            params.put("h", n * MapServer.TILE_SIZE - 1.0);
+            Map<String, Object> raster = rasterer.getMapRaster(params);
+            RouteOverlay noRoute = null;
+
+            MapServer.clearTileCache();
+            long start = System.nanoTime();
+            BufferedImage img = MapServer.renderRaster(raster, noRoute);
+            long cold = System.nanoTime() - start;
+            start = System.nanoTime();
+            for (int i = 0; i < RASTER_REPEATS; i++) {
+                img = MapServer.renderRaster(raster, noRoute);
+            }
+            long warm = (System.nanoTime() - start) / RASTER_REPEATS;
+
+            ByteArrayOutputStream tuned = new ByteArrayOutputStream();
+            ByteArrayOutputStream standard = new ByteArrayOutputStream();
+            long tunedTime = 0;
+            long standardTime = 0;
+            try {
+                for (int i = 0; i < RASTER_REPEATS; i++) {
+                    tuned.reset();
+                    start = System.nanoTime();
+                    MapServer.writePng(img, tuned, MapServer.PNG_COMPRESSION_QUALITY);
+                    tunedTime += System.nanoTime() - start;
+                    standard.reset();
+                    start = System.nanoTime();
+                    ImageIO.write(img, "png", standard);
+                    standardTime += System.nanoTime() - start;
+                }
+            } catch (IOException e) {
+                e.printStackTrace();
+                return;
+            }
+
+            System.out.println("raster " + n + "x" + n + " at depth " + raster.get("depth")
+                    + ": compose " + cold / 1000000 + " ms cold, " + warm / 1000000
+                    + " ms warm; encode " + standardTime / RASTER_REPEATS / 1000000 + " ms ("
+                    + standard.size() / 1024 + " KB) with ImageIO defaults, "
+                    + tunedTime / RASTER_REPEATS / 1000000 + " ms (" + tuned.size() / 1024
+                    + " KB) at quality " + MapServer.PNG_COMPRESSION_QUALITY);
+        }
+    }
+
+    /**
+     * Compares the memory and prefix search latency of the radix trie GraphDB uses with the
+     * Trie it used before, for prefixes of 1 to MAX_PREFIX_LENGTH characters of location
+     * names, and times ranked searches for the best AUTOCOMPLETE_LIMIT names.
+     */
+    private static void benchmarkAutocomplete(GraphDB g) {
+        List<String> names = new ArrayList<>();
+        for (GraphDB.Location location : g.locations()) {
+            names.add(location.name());
+        }
+        if (names.isEmpty()) {
+            System.out.println("autocomplete: no location names");
+            return;
+        }
+        long before = usedMemory();
+        Trie trie = new Trie();
+        for (String name : names) {
+            trie.addWord(GraphDB.cleanString(name), name);
+        }
+        long trieBytes = usedMemory() - before;
+        before = usedMemory();
+        RadixTrie.Builder builder = new RadixTrie.Builder();
+        for (String name : names) {
+            builder.addWord(GraphDB.cleanString(name), name);
+        }
+        RadixTrie radix = builder.build();
+        builder = null;
+        long radixBytes = usedMemory() - before;
+        System.out.println("autocomplete: " + names.size() + " names, " + radix.numNodes()
+                + " radix trie nodes; Trie " + trieBytes / 1024 + " KB, radix trie "
+                + radixBytes / 1024 + " KB (excluding the names)");
+
+        Random random = new Random(SEED);
+        for (int length = 1; length <= MAX_PREFIX_LENGTH; length++) {
+            String[] prefixes = new String[NUM_QUERIES];
+            for (int i = 0; i < NUM_QUERIES; i++) {
+                String key = GraphDB.cleanString(names.get(random.nextInt(names.size())));
+                prefixes[i] = key.substring(0, Math.min(length, key.length()));
+            }
+            long checksum = 0;
+            long start = System.nanoTime();
+            for (String prefix : prefixes) {
+                checksum += trie.wordsWithPrefix(prefix).size();
+            }
+            long trieTime = System.nanoTime() - start;
+            start = System.nanoTime();
+            for (String prefix : prefixes) {
+                checksum -= radix.wordsWithPrefix(prefix).size();
+            }
+            long radixTime = System.nanoTime() - start;
+            start = System.nanoTime();
+            for (String prefix : prefixes) {
+                checksum += radix.topWordsWithPrefix(prefix, AUTOCOMPLETE_LIMIT).size();
+            }
+            long topTime = System.nanoTime() - start;
+            System.out.println("autocomplete, " + length + " character prefixes: Trie "
+                    + micros(trieTime, NUM_QUERIES) + " us/query, radix trie "
+                    + micros(radixTime, NUM_QUERIES) + " us/query, top " + AUTOCOMPLETE_LIMIT
+                    + " " + micros(topTime, NUM_QUERIES) + " us/query (checksum " + checksum
+                    + ")");
+        }
+    }
+
+    /**
+     * Compares the throughput of parsing the OSM file with SAX alone, on one thread, with
+     * that of the OsmReader pipeline building the whole graph, from the file and from a
+     * gzipped copy of it.
+     */
+    private static void benchmarkIngest(String osmPath) {
+        try {
+            SAXParser saxParser = SAXParserFactory.newInstance().newSAXParser();
+            long[] count = new long[1];
+            long start = System.nanoTime();
+            try (InputStream in = new FileInputStream(osmPath)) {
+                saxParser.parse(in, new DefaultHandler() {
+                    @Override
+                    public void startElement(String uri, String localName, String qName,
+                                             Attributes attributes) {
+                        count[0] += 1;
+                    }
+                });
+            }
+            long sax = System.nanoTime() - start;
+            System.out.println("ingest: SAX parse only " + count[0] + " elements, "
+                    + String.format("%.0f", count[0] * 1e9 / sax) + " elements/s");
+
+            File gzipped = File.createTempFile("benchmark", ".osm.xml.gz");
+            gzipped.deleteOnExit();
+            try (InputStream in = new FileInputStream(osmPath);
+                 OutputStream out = new GZIPOutputStream(new FileOutputStream(gzipped))) {
+                byte[] buf = new byte[1 << 16];
+                for (int n = in.read(buf); n > 0; n = in.read(buf)) {
+                    out.write(buf, 0, n);
+                }
+            }
+            for (String path : new String[]{osmPath, gzipped.getPath()}) {
+                OsmReader reader = new OsmReader(path);
+                new GraphDB(reader);
+                System.out.println("ingest: OsmReader parse and build " + reader.elements()
+                        + " elements from " + new File(path).length() / 1024 + " KB, "
+                        + String.format("%.0f", reader.elementsPerSecond()) + " elements/s");
+            }
+        } catch (ParserConfigurationException | SAXException | IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Returns the heap in use after a garbage collection, in bytes. It is only an estimate.
+     */
+    private static long usedMemory() {
+        Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+        }
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+
+    /**
+     * Returns count (start, destination) vertex pairs snapped from random points.
+     */
+    private static long[][] randomRoutes(GraphDB g, int count) {
+        double[][] points = randomPoints(2 * count);
+        long[][] routes = new long[count][2];
+        for (int i = 0; i < count; i++) {
+            routes[i][0] = g.closest(points[2 * i][0], points[2 * i][1]);
+            routes[i][1] = g.closest(points[2 * i + 1][0], points[2 * i + 1][1]);
+        }
+        return routes;
+    }
+
+    private static long closestByScan(CompactGraph cg, double lon, double lat) {
+        long closestNode = -1;
+        double closestDist = Double.POSITIVE_INFINITY;
+        for (int v = 0; v < cg.size(); v++) {
+            double dist = GraphDB.distance(cg.lon(v), cg.lat(v), lon, lat);
+            if (dist < closestDist) {
+                closestDist = dist;
+                closestNode = cg.id(v);
+            }
+        }
+        return closestNode;
+    }
+
+    /**
+     * Returns count random (lon, lat) points inside the root tile.
+     */
+    private static double[][] randomPoints(int count) {
+        Random random = new Random(SEED);
+        double[][] points = new double[count][2];
+        for (int i = 0; i < count; i++) {
+            points[i][0] = MapServer.ROOT_ULLON
+                    + random.nextDouble() * (MapServer.ROOT_LRLON - MapServer.ROOT_ULLON);
+            points[i][1] = MapServer.ROOT_LRLAT
+                    + random.nextDouble() * (MapServer.ROOT_ULLAT - MapServer.ROOT_LRLAT);
+        }
+        return points;
+    }
+
+    private static String micros(long nanos, int count) {
+        return String.format("%.2f", nanos / 1000.0 / count);
+    }
+}
@@ -0,0 +1,698 @@
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.DoubleBuffer;
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+import java.nio.LongBuffer;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.NoSuchElementException;
+
+/**
+ * Compressed-sparse-row (CSR) representation of the road graph.
+ * OSM ids are remapped to dense int indices in [0, size()), sorted by id, so that
+ * per-vertex data lives in flat primitive arrays instead of boxed node objects.
+ * The neighbors of vertex v are targets[offsets[v]] ... targets[offsets[v + 1] - 1],
+ * in the same order as the edges were added.
+ * <p>
+ * The great-circle length of every edge slot is computed once, when the graph is created,
+ * so that searches do not evaluate trigonometric functions on every edge they relax. So is
+ * its travel time, from the speed of the edge's road.
+ * <p>
+ * The name of the way of each edge slot is stored as an index into a table holding each
+ * distinct name once.
+ * <p>
+ * Every vertex is tagged with its connected component, so that callers can snap to the
+ * largest one and tell that a route does not exist without searching for it. Edges are
+ * undirected, so these are also the strongly connected components.
+ * <p>
+ * The arrays are held as buffers, so that a graph loaded by GraphSnapshot reads them
+ * straight from the mapped file, along with the lengths, times and components computed
+ * when the snapshot was written. A graph built in memory wraps ordinary arrays.
+ */
+public class CompactGraph {
+    // The radius GraphDB.distance uses.
+    private static final double EARTH_RADIUS_MILES = 3963;
+    // The speed of edges added without one, e.g. by tests.
+    static final float DEFAULT_SPEED_MPH = 25;
+    private static final double SECONDS_PER_HOUR = 3600;
+    // Parameters of the 64-bit FNV-1a hash, used by checksum.
+    private static final long FNV_OFFSET_BASIS = 0xcbf29ce484222325L;
+    private static final long FNV_PRIME = 0x100000001b3L;
+
+    // Sorted OSM ids; the index of an id in this array is its dense vertex index.
+    private final LongBuffer ids;
+    private final DoubleBuffer lon;
+    private final DoubleBuffer lat;
+    // offsets[v] is the first edge slot of v, offsets[size()] == number of edge slots.
+    private final IntBuffer offsets;
+    private final IntBuffer targets;
+    // lengths[e] is the great-circle length of edge slot e, in miles.
+    private final DoubleBuffer lengths;
+    // speeds[e] is the speed on edge slot e in miles per hour, and times[e] the time it
+    // takes to travel it in seconds.
+    private final FloatBuffer speeds;
+    private final DoubleBuffer times;
+    // The highest speed of any edge, for lower bounds of travel times.
+    private final float maxSpeed;
+    // The way name of edge slot e is names[nameIds[e]], or null if nameIds[e] is -1.
+    private final IntBuffer nameIds;
+    private final String[] names;
+    // The connected component of each vertex, numbered in order of their smallest vertex.
+    private final IntBuffer components;
+    private final int numComponents;
+    private final int largestComponent;
+    // Miles per degree of longitude and of latitude in lowerBound, see boundScales.
+    private final double lonScale;
+    private final double latScale;
+
+    CompactGraph(long[] ids, double[] lon, double[] lat, int[] offsets, int[] targets) {
+        this(ids, lon, lat, offsets, targets, defaultSpeeds(targets.length));
+    }
+
+    /**
+     * Creates a graph whose edge slot e has a speed of speeds[e] miles per hour.
+     */
+    CompactGraph(long[] ids, double[] lon, double[] lat, int[] offsets, int[] targets,
+                 float[] speeds) {
+        this(ids, lon, lat, offsets, targets, speeds, unnamed(targets.length), new String[0]);
+    }
+
+    /**
+     * Creates a graph whose edge slot e has a speed of speeds[e] miles per hour, and the
+     * way name names[nameIds[e]], or none if nameIds[e] is -1.
+     */
+    CompactGraph(long[] ids, double[] lon, double[] lat, int[] offsets, int[] targets,
+                 float[] speeds, int[] nameIds, String[] names) {
+        this.ids = LongBuffer.wrap(ids);
+        this.lon = DoubleBuffer.wrap(lon);
+        this.lat = DoubleBuffer.wrap(lat);
+        this.offsets = IntBuffer.wrap(offsets);
+        this.targets = IntBuffer.wrap(targets);
+        this.speeds = FloatBuffer.wrap(speeds);
+        this.nameIds = IntBuffer.wrap(nameIds);
+        this.names = names;
+        double[] lengths = new double[targets.length];
+        double[] times = new double[targets.length];
+        float fastest = 0;
+        for (int v = 0; v < ids.length; v++) {
+            for (int e = offsets[v]; e < offsets[v + 1]; e++) {
+                int w = targets[e];
+                lengths[e] = GraphDB.distance(lon[v], lat[v], lon[w], lat[w]);
+                times[e] = lengths[e] / speeds[e] * SECONDS_PER_HOUR;
+                fastest = Math.max(fastest, speeds[e]);
+            }
+        }
+        this.lengths = DoubleBuffer.wrap(lengths);
+        this.times = DoubleBuffer.wrap(times);
+        this.maxSpeed = fastest;
+        double[] scales = boundScales(lat, lon);
+        this.lonScale = scales[0];
+        this.latScale = scales[1];
+        int[] components = new int[ids.length];
+        int[] sizes = labelComponents(offsets, targets, components);
+        this.components = IntBuffer.wrap(components);
+        this.numComponents = sizes.length;
+        int largest = -1;
+        for (int c = 0; c < sizes.length; c++) {
+            if (largest < 0 || sizes[c] > sizes[largest]) {
+                largest = c;
+            }
+        }
+        this.largestComponent = largest;
+    }
+
+    /**
+     * Creates a graph over the section of a snapshot written by write, without copying
+     * its arrays.
+     */
+    private CompactGraph(ByteBuffer buf) {
+        GraphSnapshot.align(buf);
+        int n = buf.getInt();
+        int m = buf.getInt();
+        this.numComponents = buf.getInt();
+        this.largestComponent = buf.getInt();
+        this.maxSpeed = buf.getFloat();
+        this.names = new String[buf.getInt()];
+        this.lonScale = buf.getDouble();
+        this.latScale = buf.getDouble();
+        this.ids = GraphSnapshot.longs(buf, n);
+        this.lon = GraphSnapshot.doubles(buf, n);
+        this.lat = GraphSnapshot.doubles(buf, n);
+        this.lengths = GraphSnapshot.doubles(buf, m);
+        this.times = GraphSnapshot.doubles(buf, m);
+        this.offsets = GraphSnapshot.ints(buf, n + 1);
+        this.targets = GraphSnapshot.ints(buf, m);
+        this.nameIds = GraphSnapshot.ints(buf, m);
+        this.components = GraphSnapshot.ints(buf, n);
+        this.speeds = GraphSnapshot.floats(buf, m);
+        for (int i = 0; i < names.length; i++) {
+            names[i] = GraphSnapshot.readString(buf);
+        }
+    }
+
+    /**
+     * Returns the graph whose snapshot section starts at the position of buf, and moves
+     * the position past it. The graph reads its arrays from buf.
+     */
+    static CompactGraph map(ByteBuffer buf) {
+        return new CompactGraph(buf);
+    }
+
+    /**
+     * Writes the snapshot section of this graph, which map reads back: its arrays, the
+     * values derived from them, and the way names.
+     */
+    void write(DataOutputStream out) throws IOException {
+        int n = size();
+        int m = numEdges();
+        GraphSnapshot.align(out);
+        out.writeInt(n);
+        out.writeInt(m);
+        out.writeInt(numComponents);
+        out.writeInt(largestComponent);
+        out.writeFloat(maxSpeed);
+        out.writeInt(names.length);
+        out.writeDouble(lonScale);
+        out.writeDouble(latScale);
+        for (int v = 0; v < n; v++) {
+            out.writeLong(ids.get(v));
+        }
+        for (int v = 0; v < n; v++) {
+            out.writeDouble(lon.get(v));
+        }
+        for (int v = 0; v < n; v++) {
+            out.writeDouble(lat.get(v));
+        }
+        for (int e = 0; e < m; e++) {
+            out.writeDouble(lengths.get(e));
+        }
+        for (int e = 0; e < m; e++) {
+            out.writeDouble(times.get(e));
+        }
+        for (int v = 0; v <= n; v++) {
+            out.writeInt(offsets.get(v));
+        }
+        for (int e = 0; e < m; e++) {
+            out.writeInt(targets.get(e));
+        }
+        for (int e = 0; e < m; e++) {
+            out.writeInt(nameIds.get(e));
+        }
+        for (int v = 0; v < n; v++) {
+            out.writeInt(components.get(v));
+        }
+        for (int e = 0; e < m; e++) {
+            out.writeFloat(speeds.get(e));
+        }
+        for (String name : names) {
+            GraphSnapshot.writeString(out, name);
+        }
+    }
+
+    /**
+     * Labels each vertex with its connected component by a breadth-first search from
+     * every vertex that is not labeled yet, and returns the sizes of the components.
+     */
+    private static int[] labelComponents(int[] offsets, int[] targets, int[] components) {
+        int n = components.length;
+        Arrays.fill(components, -1);
+        int[] queue = new int[n];
+        int[] sizes = new int[n];
+        int count = 0;
+        for (int s = 0; s < n; s++) {
+            if (components[s] >= 0) {
+                continue;
+            }
+            int head = 0;
+            int tail = 0;
+            components[s] = count;
+            queue[tail++] = s;
+            while (head < tail) {
+                int v = queue[head++];
+                for (int e = offsets[v]; e < offsets[v + 1]; e++) {
+                    int w = targets[e];
+                    if (components[w] < 0) {
+                        components[w] = count;
+                        queue[tail++] = w;
+                    }
+                }
+            }
+            sizes[count] = tail;
+            count += 1;
+        }
+        return Arrays.copyOf(sizes, count);
+    }
+
+    private static int[] unnamed(int numSlots) {
+        int[] nameIds = new int[numSlots];
+        Arrays.fill(nameIds, -1);
+        return nameIds;
+    }
+
+    private static float[] defaultSpeeds(int numSlots) {
+        float[] speeds = new float[numSlots];
+        Arrays.fill(speeds, DEFAULT_SPEED_MPH);
+        return speeds;
+    }
+
+    /**
+     * Returns the scales of an equirectangular projection of the bounding box of the
+     * vertices whose distances never exceed great-circle distances.
+     * <p>
+     * Longitude is scaled by the cosine of the latitude farthest from the equator, where
+     * a degree of longitude is shortest, and latitude by its exact length. Two points that
+     * are far apart in longitude are joined by a great circle bending towards the pole,
+     * which is shorter than the projection by a relative error below span^2 / 24, for a
+     * span of the box in radians; both scales are lowered by span^2 / 8 to cover it, and a
+     * little more for rounding.
+     */
+    private static double[] boundScales(double[] lat, double[] lon) {
+        if (lat.length == 0) {
+            return new double[]{0, 0};
+        }
+        double minLat = lat[0];
+        double maxLat = lat[0];
+        double minLon = lon[0];
+        double maxLon = lon[0];
+        for (int v = 1; v < lat.length; v++) {
+            minLat = Math.min(minLat, lat[v]);
+            maxLat = Math.max(maxLat, lat[v]);
+            minLon = Math.min(minLon, lon[v]);
+            maxLon = Math.max(maxLon, lon[v]);
+        }
+        double span = Math.toRadians(Math.max(maxLat - minLat, maxLon - minLon));
+        double slack = 1 - span * span / 8 - 1e-9;
+        double milesPerDegree = Math.toRadians(EARTH_RADIUS_MILES) * slack;
+        double cos = Math.min(Math.cos(Math.toRadians(minLat)),
+                Math.cos(Math.toRadians(maxLat)));
+        return new double[]{milesPerDegree * Math.max(cos, 0), milesPerDegree};
+    }
+
+    /**
+     * Returns the number of vertices.
+     */
+    int size() {
+        return ids.limit();
+    }
+
+    /**
+     * Returns the number of directed edge slots, i.e. twice the number of undirected edges.
+     */
+    int numEdges() {
+        return targets.limit();
+    }
+
+    /**
+     * Returns the OSM id of vertex v.
+     */
+    long id(int v) {
+        return ids.get(v);
+    }
+
+    /**
+     * Returns the dense index of the given OSM id, or -1 if it is not in the graph.
+     */
+    int index(long id) {
+        int lo = 0;
+        int hi = ids.limit() - 1;
+        while (lo <= hi) {
+            int mid = (lo + hi) >>> 1;
+            long midId = ids.get(mid);
+            if (midId < id) {
+                lo = mid + 1;
+            } else if (midId > id) {
+                hi = mid - 1;
+            } else {
+                return mid;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Returns the dense index of the given OSM id.
+     *
+     * @throws NoSuchElementException if the id is not in the graph.
+     */
+    int indexOf(long id) {
+        int v = index(id);
+        if (v < 0) {
+            throw new NoSuchElementException("Node v is not in graph!");
+        }
+        return v;
+    }
+
+    double lon(int v) {
+        return lon.get(v);
+    }
+
+    double lat(int v) {
+        return lat.get(v);
+    }
+
+    /**
+     * Returns the first edge slot of v.
+     */
+    int edgeStart(int v) {
+        return offsets.get(v);
+    }
+
+    /**
+     * Returns one past the last edge slot of v.
+     */
+    int edgeEnd(int v) {
+        return offsets.get(v + 1);
+    }
+
+    /**
+     * Returns the vertex index the edge slot e points to.
+     */
+    int target(int e) {
+        return targets.get(e);
+    }
+
+    /**
+     * Returns the great-circle length of edge slot e, in miles, the same as
+     * GraphDB.distance between its endpoints.
+     */
+    double length(int e) {
+        return lengths.get(e);
+    }
+
+    /**
+     * Returns the connected component of v.
+     */
+    int component(int v) {
+        return components.get(v);
+    }
+
+    /**
+     * Returns whether there is a path between v and w.
+     */
+    boolean connected(int v, int w) {
+        return components.get(v) == components.get(w);
+    }
+
+    int numComponents() {
+        return numComponents;
+    }
+
+    /**
+     * Returns the component with the most vertices, the one with the smallest vertex among
+     * equally large ones, or -1 if the graph is empty.
+     */
+    int largestComponent() {
+        return largestComponent;
+    }
+
+    /**
+     * Returns the vertices of component c, in increasing order.
+     */
+    int[] componentVertices(int c) {
+        int n = size();
+        int count = 0;
+        for (int v = 0; v < n; v++) {
+            if (components.get(v) == c) {
+                count += 1;
+            }
+        }
+        int[] vertices = new int[count];
+        int i = 0;
+        for (int v = 0; v < n; v++) {
+            if (components.get(v) == c) {
+                vertices[i++] = v;
+            }
+        }
+        return vertices;
+    }
+
+    /**
+     * Returns the last edge slot of v that points to w, i.e. the one of the edge (v, w)
+     * added last, or -1 if there is none.
+     */
+    int edge(int v, int w) {
+        for (int e = offsets.get(v + 1) - 1; e >= offsets.get(v); e--) {
+            if (targets.get(e) == w) {
+                return e;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Returns the way name of edge slot e, or null if its way has no name.
+     */
+    String name(int e) {
+        int nameId = nameIds.get(e);
+        return nameId < 0 ? null : names[nameId];
+    }
+
+    /**
+     * Returns the index of the way name of edge slot e in the name table, or -1 if its way
+     * has no name.
+     */
+    int nameId(int e) {
+        return nameIds.get(e);
+    }
+
+    /**
+     * Returns the number of distinct way names.
+     */
+    int numNames() {
+        return names.length;
+    }
+
+    /**
+     * Returns the way name with the given index in the name table.
+     */
+    String nameOf(int nameId) {
+        return names[nameId];
+    }
+
+    /**
+     * Returns the speed on edge slot e, in miles per hour.
+     */
+    float speed(int e) {
+        return speeds.get(e);
+    }
+
+    /**
+     * Returns the time it takes to travel edge slot e at its speed, in seconds.
+     */
+    double travelTime(int e) {
+        return times.get(e);
+    }
+
+    /**
+     * Returns a lower bound of the time it takes to travel from v to w, in seconds: the
+     * lower bound of their distance at the highest speed of the graph. Like lowerBound, it
+     * is a consistent A* heuristic, for travel times.
+     */
+    double travelTimeLowerBound(int v, int w) {
+        return maxSpeed == 0 ? 0 : lowerBound(v, w) / maxSpeed * SECONDS_PER_HOUR;
+    }
+
+    /**
+     * Returns a lower bound of the great-circle distance between v and w, in miles. It is
+     * a straight line distance in a projection of the graph's bounding box, so it is much
+     * cheaper than GraphDB.distance, and it never exceeds an edge's length, so it is a
+     * consistent A* heuristic.
+     */
+    double lowerBound(int v, int w) {
+        double dx = (lon.get(v) - lon.get(w)) * lonScale;
+        double dy = (lat.get(v) - lat.get(w)) * latScale;
+        return Math.sqrt(dx * dx + dy * dy);
+    }
+
+    /**
+     * Returns a checksum of the vertex ids, their locations and the adjacency, so that
+     * files computed for one graph, such as landmarks or a contraction hierarchy, can tell
+     * that they are loaded for another one with the same numbers of vertices and edges.
+     */
+    long checksum() {
+        long hash = FNV_OFFSET_BASIS;
+        for (int v = 0; v < size(); v++) {
+            hash = (hash ^ ids.get(v)) * FNV_PRIME;
+            hash = (hash ^ Double.doubleToLongBits(lon.get(v))) * FNV_PRIME;
+            hash = (hash ^ Double.doubleToLongBits(lat.get(v))) * FNV_PRIME;
+            hash = (hash ^ offsets.get(v + 1)) * FNV_PRIME;
+        }
+        for (int e = 0; e < numEdges(); e++) {
+            hash = (hash ^ targets.get(e)) * FNV_PRIME;
+        }
+        return hash;
+    }
+
+    int degree(int v) {
+        return offsets.get(v + 1) - offsets.get(v);
+    }
+
+    /**
+     * Accumulates nodes and edges while a graph is being parsed, then freezes them into
+     * a CompactGraph. Nodes are stored in growable primitive arrays in insertion order,
+     * and edges as pairs of OSM ids, so nothing is boxed during loading either.
+     */
+    static class Builder {
+        private static final int INITIAL_CAPACITY = 1024;
+
+        private long[] nodeIds = new long[INITIAL_CAPACITY];
+        private double[] nodeLon = new double[INITIAL_CAPACITY];
+        private double[] nodeLat = new double[INITIAL_CAPACITY];
+        private int numNodes = 0;
+
+        private long[] edgeFrom = new long[INITIAL_CAPACITY];
+        private long[] edgeTo = new long[INITIAL_CAPACITY];
+        private float[] edgeSpeed = new float[INITIAL_CAPACITY];
+        private int[] edgeName = new int[INITIAL_CAPACITY];
+        private int numEdges = 0;
+        // Each distinct way name once, and its index.
+        private String[] names = new String[INITIAL_CAPACITY];
+        private Map<String, Integer> nameIndex = new HashMap<>();
+
+        void addNode(long id, double lon, double lat) {
+            if (numNodes == nodeIds.length) {
+                int capacity = 2 * numNodes;
+                nodeIds = Arrays.copyOf(nodeIds, capacity);
+                nodeLon = Arrays.copyOf(nodeLon, capacity);
+                nodeLat = Arrays.copyOf(nodeLat, capacity);
+            }
+            nodeIds[numNodes] = id;
+            nodeLon[numNodes] = lon;
+            nodeLat[numNodes] = lat;
+            numNodes += 1;
+        }
+
+        /**
+         * Adds the undirected edge (v, w) with the default speed and returns its index in
+         * insertion order.
+         */
+        int addEdge(long v, long w) {
+            return addEdge(v, w, DEFAULT_SPEED_MPH);
+        }
+
+        /**
+         * Adds the undirected edge (v, w) with a speed in miles per hour, which must be
+         * positive, and returns its index in insertion order.
+         */
+        int addEdge(long v, long w, float speedMph) {
+            return addEdge(v, w, speedMph, null);
+        }
+
+        /**
+         * Adds the undirected edge (v, w) with a speed in miles per hour, which must be
+         * positive, and the name of its way, which may be null, and returns its index in
+         * insertion order.
+         */
+        int addEdge(long v, long w, float speedMph, String name) {
+            if (numEdges == edgeFrom.length) {
+                int capacity = 2 * numEdges;
+                edgeFrom = Arrays.copyOf(edgeFrom, capacity);
+                edgeTo = Arrays.copyOf(edgeTo, capacity);
+                edgeSpeed = Arrays.copyOf(edgeSpeed, capacity);
+                edgeName = Arrays.copyOf(edgeName, capacity);
+            }
+            edgeFrom[numEdges] = v;
+            edgeTo[numEdges] = w;
+            edgeSpeed[numEdges] = speedMph;
+            edgeName[numEdges] = name == null ? -1 : intern(name);
+            numEdges += 1;
+            return numEdges - 1;
+        }
+
+        private int intern(String name) {
+            Integer index = nameIndex.get(name);
+            if (index == null) {
+                index = nameIndex.size();
+                if (index == names.length) {
+                    names = Arrays.copyOf(names, 2 * index);
+                }
+                names[index] = name;
+                nameIndex.put(name, index);
+            }
+            return index;
+        }
+
+        /**
+         * Builds the CSR graph. Nodes without any edge are dropped (this is GraphDB's
+         * "clean" step), and edges referring to unknown nodes are ignored. If a node id
+         * was added more than once, the last location wins.
+         */
+        CompactGraph build() {
+            // Sort and de-duplicate all node ids.
+            long[] allIds = Arrays.copyOf(nodeIds, numNodes);
+            Arrays.sort(allIds);
+            int numIds = 0;
+            for (int i = 0; i < allIds.length; i++) {
+                if (i == 0 || allIds[i] != allIds[i - 1]) {
+                    allIds[numIds] = allIds[i];
+                    numIds += 1;
+                }
+            }
+            allIds = Arrays.copyOf(allIds, numIds);
+
+            double[] allLon = new double[numIds];
+            double[] allLat = new double[numIds];
+            for (int i = 0; i < numNodes; i++) {
+                int pos = Arrays.binarySearch(allIds, nodeIds[i]);
+                allLon[pos] = nodeLon[i];
+                allLat[pos] = nodeLat[i];
+            }
+
+            // Resolve edge endpoints and count the degree of every node.
+            int[] from = new int[numEdges];
+            int[] to = new int[numEdges];
+            int[] degree = new int[numIds];
+            for (int e = 0; e < numEdges; e++) {
+                from[e] = Arrays.binarySearch(allIds, edgeFrom[e]);
+                to[e] = Arrays.binarySearch(allIds, edgeTo[e]);
+                if (from[e] >= 0 && to[e] >= 0) {
+                    degree[from[e]] += 1;
+                    degree[to[e]] += 1;
+                }
+            }
+
+            // Keep only connected nodes, remapping them to dense indices.
+            int[] remap = new int[numIds];
+            int n = 0;
+            for (int i = 0; i < numIds; i++) {
+                remap[i] = degree[i] > 0 ? n++ : -1;
+            }
+            long[] ids = new long[n];
+            double[] lon = new double[n];
+            double[] lat = new double[n];
+            int[] offsets = new int[n + 1];
+            for (int i = 0; i < numIds; i++) {
+                int v = remap[i];
+                if (v >= 0) {
+                    ids[v] = allIds[i];
+                    lon[v] = allLon[i];
+                    lat[v] = allLat[i];
+                    offsets[v + 1] = offsets[v] + degree[i];
+                }
+            }
+
+            // Fill the adjacency in edge order, so neighbor order matches insertion order.
+            int[] targets = new int[offsets[n]];
+            float[] speeds = new float[offsets[n]];
+            int[] nameIds = new int[offsets[n]];
+            int[] cursor = Arrays.copyOf(offsets, n);
+            for (int e = 0; e < numEdges; e++) {
+                if (from[e] >= 0 && to[e] >= 0) {
+                    int v = remap[from[e]];
+                    int w = remap[to[e]];
+                    speeds[cursor[v]] = edgeSpeed[e];
+                    nameIds[cursor[v]] = edgeName[e];
+                    targets[cursor[v]++] = w;
+                    speeds[cursor[w]] = edgeSpeed[e];
+                    nameIds[cursor[w]] = edgeName[e];
+                    targets[cursor[w]++] = v;
+                }
+            }
+            return new CompactGraph(ids, lon, lat, offsets, targets, speeds, nameIds,
+                    Arrays.copyOf(names, nameIndex.size()));
+        }
+    }
+}
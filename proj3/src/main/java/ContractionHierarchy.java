@@ -0,0 +1,543 @@
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedList;
+import java.util.List;
+
+/**
+ * Contraction hierarchy over the road graph, for shortest path queries that settle only a
+ * few hundred vertices no matter how far apart the endpoints are.
+ * <p>
+ * Preprocessing contracts the vertices one at a time, cheapest first (by edge difference
+ * plus the number of already contracted neighbors). Contracting v adds a shortcut u - w
+ * for each pair of its remaining neighbors whose shortest path goes through v, which is
+ * checked with a bounded witness search. A query then runs Dijkstra from both endpoints
+ * using only edges that lead to higher ranked vertices, and unpacks the shortcuts on the
+ * best route back into original vertices.
+ * <p>
+ * Edge weights are great-circle distances, the same as Router's A*. A hierarchy is tied
+ * to the CompactGraph it was built from, since it stores dense vertex indices; its file
+ * records a checksum of the graph, and is rejected when loaded for another one.
+ */
+public class ContractionHierarchy {
+    private static final int MAGIC = 0x43484752; // "CHGR"
+    private static final int VERSION = 2;
+    private static final String OSM_DB_PATH = "../library-sp18/data/berkeley-2018.osm.xml";
+    private static final String CH_PATH = "../library-sp18/data/berkeley-2018.ch";
+
+    private final CompactGraph g;
+    // Contraction order of each vertex.
+    private final int[] rank;
+    // Upward graph in CSR form: edges (original or shortcut) to higher ranked neighbors.
+    private final int[] upOffsets;
+    private final int[] upTargets;
+    private final double[] upWeights;
+    // Vertex bypassed by each upward edge, or -1 for an original edge.
+    private final int[] upMiddles;
+
+    private ContractionHierarchy(CompactGraph g, int[] rank, int[] upOffsets, int[] upTargets,
+                                 double[] upWeights, int[] upMiddles) {
+        this.g = g;
+        this.rank = rank;
+        this.upOffsets = upOffsets;
+        this.upTargets = upTargets;
+        this.upWeights = upWeights;
+        this.upMiddles = upMiddles;
+    }
+
+    /**
+     * Preprocesses an OSM file and writes its contraction hierarchy.
+     * Usage: ContractionHierarchy [osmPath] [chPath]
+     */
+    public static void main(String[] args) throws IOException {
+        String osmPath = args.length > 0 ? args[0] : OSM_DB_PATH;
+        String chPath = args.length > 1 ? args[1] : CH_PATH;
+        GraphDB g = new GraphDB(osmPath);
+
+        long start = System.currentTimeMillis();
+        ContractionHierarchy ch = build(g.compactGraph());
+        long built = System.currentTimeMillis();
+        ch.save(chPath);
+
+        System.out.println("Contracted " + g.compactGraph().size() + " vertices in "
+                + (built - start) + " ms, adding " + ch.numShortcuts() + " shortcuts.");
+        System.out.println("Wrote " + chPath);
+    }
+
+    /**
+     * Builds the contraction hierarchy of a graph.
+     *
+     * @param g The graph to preprocess.
+     * @return The contraction hierarchy.
+     */
+    public static ContractionHierarchy build(CompactGraph g) {
+        return new Contractor(g).contract();
+    }
+
+    /**
+     * Returns the number of shortcut edges in the upward graph.
+     */
+    int numShortcuts() {
+        int count = 0;
+        for (int middle : upMiddles) {
+            if (middle >= 0) {
+                count += 1;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Finds the shortest route between two vertices, as a list of OSM ids of original
+     * vertices from src to target. The list is empty if target is unreachable, which is
+     * told from the connected components without searching.
+     */
+    Router.SearchResult search(long srcId, long targetId) {
+        int src = g.indexOf(srcId);
+        int target = g.indexOf(targetId);
+        List<Long> route = new LinkedList<>();
+        if (src == target) {
+            route.add(srcId);
+            return new Router.SearchResult(route, 1);
+        }
+        if (!g.connected(src, target)) {
+            return new Router.SearchResult(route, 0);
+        }
+
+        SearchContext forward = SearchContext.acquire(g.size());
+        SearchContext backward = SearchContext.acquire(g.size());
+        try {
+            forward.reset();
+            backward.reset();
+            forward.reach(src, 0, src);
+            forward.pq().insertOrDecrease(src, 0);
+            backward.reach(target, 0, target);
+            backward.pq().insertOrDecrease(target, 0);
+
+            double best = Double.POSITIVE_INFINITY;
+            int meet = -1;
+            int settled = 0;
+            while (true) {
+                boolean canF = !forward.pq().isEmpty() && forward.pq().minKey() < best;
+                boolean canB = !backward.pq().isEmpty() && backward.pq().minKey() < best;
+                if (!canF && !canB) {
+                    break;
+                }
+                boolean isForward = canF && (!canB
+                        || forward.pq().minKey() <= backward.pq().minKey());
+                SearchContext side = isForward ? forward : backward;
+                SearchContext other = isForward ? backward : forward;
+
+                int v = side.pq().delMin();
+                double d = side.distTo(v);
+                settled += 1;
+                if (d + other.distTo(v) < best) {
+                    best = d + other.distTo(v);
+                    meet = v;
+                }
+                for (int e = upOffsets[v]; e < upOffsets[v + 1]; e++) {
+                    int w = upTargets[e];
+                    double curDist = d + upWeights[e];
+                    if (curDist < side.distTo(w)) {
+                        side.reach(w, curDist, v);
+                        side.pq().insertOrDecrease(w, curDist);
+                    }
+                }
+            }
+
+            if (meet >= 0) {
+                // Upward path src -> meet, then meet -> target down the backward search tree.
+                List<Integer> up = new LinkedList<>();
+                for (int cur = meet; cur != src; cur = forward.edgeTo(cur)) {
+                    up.add(cur);
+                }
+                up.add(src);
+                Collections.reverse(up);
+                for (int cur = meet; cur != target; ) {
+                    cur = backward.edgeTo(cur);
+                    up.add(cur);
+                }
+
+                route.add(srcId);
+                int prev = src;
+                for (int v : up.subList(1, up.size())) {
+                    unpack(prev, v, route);
+                    prev = v;
+                }
+            }
+            return new Router.SearchResult(route, settled);
+        } finally {
+            SearchContext.release(forward);
+            SearchContext.release(backward);
+        }
+    }
+
+    /**
+     * Appends the original vertices on the edge (a, b) after a, up to and including b.
+     */
+    private void unpack(int a, int b, List<Long> route) {
+        int middle = middle(a, b);
+        if (middle < 0) {
+            route.add(g.id(b));
+            return;
+        }
+        unpack(a, middle, route);
+        unpack(middle, b, route);
+    }
+
+    /**
+     * Returns the vertex bypassed by the upward edge between a and b, or -1 if it is an
+     * original edge.
+     */
+    private int middle(int a, int b) {
+        int lo = rank[a] < rank[b] ? a : b;
+        int hi = lo == a ? b : a;
+        for (int e = upOffsets[lo]; e < upOffsets[lo + 1]; e++) {
+            if (upTargets[e] == hi) {
+                return upMiddles[e];
+            }
+        }
+        throw new IllegalStateException("No edge between " + g.id(a) + " and " + g.id(b));
+    }
+
+    /**
+     * Writes the hierarchy to a file.
+     *
+     * @param path Path of the file to write.
+     * @throws IOException If the file cannot be written.
+     */
+    public void save(String path) throws IOException {
+        try (DataOutputStream out = new DataOutputStream(
+                new BufferedOutputStream(new FileOutputStream(path), 1 << 16))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(g.size());
+            out.writeInt(g.numEdges());
+            out.writeLong(g.checksum());
+            out.writeInt(upTargets.length);
+            for (int r : rank) {
+                out.writeInt(r);
+            }
+            for (int offset : upOffsets) {
+                out.writeInt(offset);
+            }
+            for (int e = 0; e < upTargets.length; e++) {
+                out.writeInt(upTargets[e]);
+                out.writeDouble(upWeights[e]);
+                out.writeInt(upMiddles[e]);
+            }
+        }
+    }
+
+    /**
+     * Reads a hierarchy written by save.
+     *
+     * @param path Path of the file to read.
+     * @param g    The graph the hierarchy was built from.
+     * @return The hierarchy.
+     * @throws IOException If the file cannot be read, or was built from a different graph.
+     */
+    public static ContractionHierarchy load(String path, CompactGraph g) throws IOException {
+        try (DataInputStream in = new DataInputStream(
+                new BufferedInputStream(new FileInputStream(path), 1 << 16))) {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+                throw new IOException("Not a supported contraction hierarchy: " + path);
+            }
+            if (in.readInt() != g.size() || in.readInt() != g.numEdges()
+                    || in.readLong() != g.checksum()) {
+                throw new IOException("Contraction hierarchy does not match graph: " + path);
+            }
+            int n = g.size();
+            int m = in.readInt();
+            int[] rank = new int[n];
+            for (int v = 0; v < n; v++) {
+                rank[v] = in.readInt();
+            }
+            int[] upOffsets = new int[n + 1];
+            for (int v = 0; v <= n; v++) {
+                upOffsets[v] = in.readInt();
+            }
+            int[] upTargets = new int[m];
+            double[] upWeights = new double[m];
+            int[] upMiddles = new int[m];
+            for (int e = 0; e < m; e++) {
+                upTargets[e] = in.readInt();
+                upWeights[e] = in.readDouble();
+                upMiddles[e] = in.readInt();
+            }
+            return new ContractionHierarchy(g, rank, upOffsets, upTargets, upWeights,
+                    upMiddles);
+        }
+    }
+
+    /**
+     * Performs the contraction. Keeps a growable adjacency list per vertex, to which
+     * shortcuts are added; contracted vertices stay in the lists and are skipped.
+     */
+    private static class Contractor {
+        // Settled vertex limit of a witness search. A search that gives up early only
+        // adds an unneeded shortcut, it never loses a shortest path.
+        private static final int WITNESS_SETTLE_LIMIT = 100;
+
+        private final CompactGraph g;
+        private final int n;
+        private final int[][] adjTargets;
+        private final double[][] adjWeights;
+        private final int[][] adjMiddles;
+        private final int[] adjSize;
+        private final boolean[] contracted;
+        private final int[] deletedNeighbors;
+
+        // Witness search state, reused between searches via a stamp.
+        private final double[] dist;
+        private final int[] reached;
+        private int stamp = 0;
+        private final MinHeap heap = new MinHeap();
+
+        // Distinct remaining neighbors of the vertex being contracted.
+        private int[] neighbors = new int[16];
+        private double[] neighborWeights = new double[16];
+        private int numNeighbors;
+        private final int[] neighborSlot;
+
+        Contractor(CompactGraph g) {
+            this.g = g;
+            n = g.size();
+            adjTargets = new int[n][];
+            adjWeights = new double[n][];
+            adjMiddles = new int[n][];
+            adjSize = new int[n];
+            for (int v = 0; v < n; v++) {
+                int degree = g.degree(v);
+                adjTargets[v] = new int[degree];
+                adjWeights[v] = new double[degree];
+                adjMiddles[v] = new int[degree];
+                for (int e = g.edgeStart(v); e < g.edgeEnd(v); e++) {
+                    int w = g.target(e);
+                    addEdge(v, w, g.length(e), -1);
+                }
+            }
+            contracted = new boolean[n];
+            deletedNeighbors = new int[n];
+            dist = new double[n];
+            reached = new int[n];
+            neighborSlot = new int[n];
+            Arrays.fill(neighborSlot, -1);
+        }
+
+        ContractionHierarchy contract() {
+            MinHeap order = new MinHeap();
+            for (int v = 0; v < n; v++) {
+                order.push(priority(v), v);
+            }
+            int[] rank = new int[n];
+            int next = 0;
+            while (!order.isEmpty()) {
+                int v = order.pop();
+                if (contracted[v]) {
+                    continue;
+                }
+                // Lazy update: re-queue v if its priority went up past the next candidate.
+                double p = priority(v);
+                if (!order.isEmpty() && p > order.topKey()) {
+                    order.push(p, v);
+                    continue;
+                }
+                contractVertex(v, true);
+                contracted[v] = true;
+                rank[v] = next++;
+                for (int i = 0; i < adjSize[v]; i++) {
+                    deletedNeighbors[adjTargets[v][i]] += 1;
+                }
+            }
+            return buildUpwardGraph(rank);
+        }
+
+        private double priority(int v) {
+            int shortcuts = contractVertex(v, false);
+            return shortcuts - numNeighbors + deletedNeighbors[v];
+        }
+
+        /**
+         * Finds the shortcuts needed to contract v, adding them if apply is true.
+         * Returns the number of shortcuts, and leaves v's neighbors in the scratch list.
+         */
+        private int contractVertex(int v, boolean apply) {
+            collectNeighbors(v);
+            int shortcuts = 0;
+            for (int i = 0; i < numNeighbors - 1; i++) {
+                int u = neighbors[i];
+                double maxOut = 0;
+                for (int j = i + 1; j < numNeighbors; j++) {
+                    maxOut = Math.max(maxOut, neighborWeights[j]);
+                }
+                witnessSearch(u, v, neighborWeights[i] + maxOut);
+                for (int j = i + 1; j < numNeighbors; j++) {
+                    int w = neighbors[j];
+                    double via = neighborWeights[i] + neighborWeights[j];
+                    double witness = reached[w] == stamp ? dist[w] : Double.POSITIVE_INFINITY;
+                    if (witness > via) {
+                        shortcuts += 1;
+                        if (apply) {
+                            addShortcut(u, w, via, v);
+                        }
+                    }
+                }
+            }
+            return shortcuts;
+        }
+
+        /**
+         * Fills the scratch list with the distinct uncontracted neighbors of v and the
+         * weight of the shortest edge to each.
+         */
+        private void collectNeighbors(int v) {
+            numNeighbors = 0;
+            for (int i = 0; i < adjSize[v]; i++) {
+                int u = adjTargets[v][i];
+                if (contracted[u] || u == v) {
+                    continue;
+                }
+                double weight = adjWeights[v][i];
+                int slot = neighborSlot[u];
+                if (slot >= 0) {
+                    neighborWeights[slot] = Math.min(neighborWeights[slot], weight);
+                    continue;
+                }
+                if (numNeighbors == neighbors.length) {
+                    neighbors = Arrays.copyOf(neighbors, 2 * numNeighbors);
+                    neighborWeights = Arrays.copyOf(neighborWeights, 2 * numNeighbors);
+                }
+                neighborSlot[u] = numNeighbors;
+                neighbors[numNeighbors] = u;
+                neighborWeights[numNeighbors] = weight;
+                numNeighbors += 1;
+            }
+            for (int i = 0; i < numNeighbors; i++) {
+                neighborSlot[neighbors[i]] = -1;
+            }
+        }
+
+        /**
+         * Dijkstra from src among uncontracted vertices other than excluded, up to the
+         * given distance or the settle limit. Reached vertices have reached[x] == stamp.
+         */
+        private void witnessSearch(int src, int excluded, double limit) {
+            stamp += 1;
+            heap.clear();
+            dist[src] = 0;
+            reached[src] = stamp;
+            heap.push(0, src);
+            int settled = 0;
+            while (!heap.isEmpty()) {
+                double d = heap.topKey();
+                int x = heap.pop();
+                if (d > dist[x]) {
+                    continue;
+                }
+                if (d > limit || ++settled > WITNESS_SETTLE_LIMIT) {
+                    break;
+                }
+                for (int i = 0; i < adjSize[x]; i++) {
+                    int y = adjTargets[x][i];
+                    if (contracted[y] || y == excluded) {
+                        continue;
+                    }
+                    double curDist = d + adjWeights[x][i];
+                    if (reached[y] != stamp || curDist < dist[y]) {
+                        reached[y] = stamp;
+                        dist[y] = curDist;
+                        heap.push(curDist, y);
+                    }
+                }
+            }
+        }
+
+        private void addShortcut(int u, int w, double weight, int middle) {
+            setEdge(u, w, weight, middle);
+            setEdge(w, u, weight, middle);
+        }
+
+        /**
+         * Adds the edge (v, w), or shortens an existing one.
+         */
+        private void setEdge(int v, int w, double weight, int middle) {
+            for (int i = 0; i < adjSize[v]; i++) {
+                if (adjTargets[v][i] == w) {
+                    if (weight < adjWeights[v][i]) {
+                        adjWeights[v][i] = weight;
+                        adjMiddles[v][i] = middle;
+                    }
+                    return;
+                }
+            }
+            addEdge(v, w, weight, middle);
+        }
+
+        private void addEdge(int v, int w, double weight, int middle) {
+            int size = adjSize[v];
+            if (size == adjTargets[v].length) {
+                int capacity = Math.max(4, 2 * size);
+                adjTargets[v] = Arrays.copyOf(adjTargets[v], capacity);
+                adjWeights[v] = Arrays.copyOf(adjWeights[v], capacity);
+                adjMiddles[v] = Arrays.copyOf(adjMiddles[v], capacity);
+            }
+            adjTargets[v][size] = w;
+            adjWeights[v][size] = weight;
+            adjMiddles[v][size] = middle;
+            adjSize[v] = size + 1;
+        }
+
+        /**
+         * Keeps, for every vertex, the shortest edge to each higher ranked neighbor.
+         */
+        private ContractionHierarchy buildUpwardGraph(int[] rank) {
+            int[] upOffsets = new int[n + 1];
+            int[] upTargets = new int[2 * n];
+            double[] upWeights = new double[2 * n];
+            int[] upMiddles = new int[2 * n];
+            int m = 0;
+            // Position of the kept edge to each neighbor of the current vertex, or -1.
+            int[] keptAt = new int[n];
+            Arrays.fill(keptAt, -1);
+            for (int v = 0; v < n; v++) {
+                for (int i = 0; i < adjSize[v]; i++) {
+                    int w = adjTargets[v][i];
+                    if (rank[w] <= rank[v]) {
+                        continue;
+                    }
+                    int e = keptAt[w];
+                    if (e >= 0) {
+                        if (adjWeights[v][i] < upWeights[e]) {
+                            upWeights[e] = adjWeights[v][i];
+                            upMiddles[e] = adjMiddles[v][i];
+                        }
+                        continue;
+                    }
+                    if (m == upTargets.length) {
+                        upTargets = Arrays.copyOf(upTargets, 2 * m);
+                        upWeights = Arrays.copyOf(upWeights, 2 * m);
+                        upMiddles = Arrays.copyOf(upMiddles, 2 * m);
+                    }
+                    upTargets[m] = w;
+                    upWeights[m] = adjWeights[v][i];
+                    upMiddles[m] = adjMiddles[v][i];
+                    keptAt[w] = m;
+                    m += 1;
+                }
+                for (int e = upOffsets[v]; e < m; e++) {
+                    keptAt[upTargets[e]] = -1;
+                }
+                upOffsets[v + 1] = m;
+            }
+            return new ContractionHierarchy(g, rank, upOffsets, Arrays.copyOf(upTargets, m),
+                    Arrays.copyOf(upWeights, m), Arrays.copyOf(upMiddles, m));
+        }
+    }
+}
@@ -0,0 +1,166 @@
+/**
+ * Spatial index of the road segments of a graph: a uniform grid over the graph's bounding
+ * box, where each cell lists the segments whose bounding box overlaps it. A range query
+ * only visits the cells overlapping the query box, so drawing a tile touches the roads
+ * near the tile rather than the whole map. Segments are stored once per direction pair,
+ * as the vertex indices of their endpoints, in compressed sparse row form.
+ */
+public class EdgeGrid {
+    // Average number of segments per cell the grid is sized for.
+    private static final int SEGMENTS_PER_CELL = 4;
+    private static final int MAX_CELLS_PER_SIDE = 1024;
+
+    /**
+     * Receives the segments found by a query.
+     */
+    public interface Visitor {
+        void visit(int v, int w);
+    }
+
+    private final CompactGraph g;
+    private final double minLon;
+    private final double minLat;
+    private final double cellLon;
+    private final double cellLat;
+    private final int cellsPerSide;
+    // The segments of cell c are from[k], to[k] for k in cells[cellStart[c], cellStart[c+1]).
+    private final int[] from;
+    private final int[] to;
+    private final int[] cellStart;
+    private final int[] cells;
+
+    /**
+     * Indexes the segments of a graph.
+     */
+    public EdgeGrid(CompactGraph g) {
+        this.g = g;
+        int numSegments = 0;
+        double minX = Double.POSITIVE_INFINITY, minY = Double.POSITIVE_INFINITY;
+        double maxX = Double.NEGATIVE_INFINITY, maxY = Double.NEGATIVE_INFINITY;
+        for (int v = 0; v < g.size(); v++) {
+            minX = Math.min(minX, g.lon(v));
+            minY = Math.min(minY, g.lat(v));
+            maxX = Math.max(maxX, g.lon(v));
+            maxY = Math.max(maxY, g.lat(v));
+            for (int e = g.edgeStart(v); e < g.edgeEnd(v); e++) {
+                if (v < g.target(e)) {
+                    numSegments += 1;
+                }
+            }
+        }
+        from = new int[numSegments];
+        to = new int[numSegments];
+        int k = 0;
+        for (int v = 0; v < g.size(); v++) {
+            for (int e = g.edgeStart(v); e < g.edgeEnd(v); e++) {
+                if (v < g.target(e)) {
+                    from[k] = v;
+                    to[k] = g.target(e);
+                    k += 1;
+                }
+            }
+        }
+
+        cellsPerSide = Math.max(1, Math.min(MAX_CELLS_PER_SIDE,
+                (int) Math.sqrt((double) numSegments / SEGMENTS_PER_CELL)));
+        if (g.size() == 0) {
+            minX = 0;
+            minY = 0;
+            maxX = 0;
+            maxY = 0;
+        }
+        minLon = minX;
+        minLat = minY;
+        // Never zero, so that a single point or line still maps to valid cells.
+        cellLon = Math.max(maxX - minX, 1e-9) / cellsPerSide;
+        cellLat = Math.max(maxY - minY, 1e-9) / cellsPerSide;
+
+        // Count the segments of each cell, then place them.
+        cellStart = new int[cellsPerSide * cellsPerSide + 1];
+        for (int s = 0; s < numSegments; s++) {
+            for (int cy = segmentMinCellY(s); cy <= segmentMaxCellY(s); cy++) {
+                for (int cx = segmentMinCellX(s); cx <= segmentMaxCellX(s); cx++) {
+                    cellStart[cy * cellsPerSide + cx + 1] += 1;
+                }
+            }
+        }
+        for (int c = 0; c < cellsPerSide * cellsPerSide; c++) {
+            cellStart[c + 1] += cellStart[c];
+        }
+        cells = new int[cellStart[cellsPerSide * cellsPerSide]];
+        int[] next = new int[cellsPerSide * cellsPerSide];
+        System.arraycopy(cellStart, 0, next, 0, next.length);
+        for (int s = 0; s < numSegments; s++) {
+            for (int cy = segmentMinCellY(s); cy <= segmentMaxCellY(s); cy++) {
+                for (int cx = segmentMinCellX(s); cx <= segmentMaxCellX(s); cx++) {
+                    cells[next[cy * cellsPerSide + cx]++] = s;
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns the number of indexed segments.
+     */
+    public int numSegments() {
+        return from.length;
+    }
+
+    /**
+     * Visits every segment whose bounding box intersects the given box, exactly once.
+     */
+    public void query(double qMinLon, double qMinLat, double qMaxLon, double qMaxLat,
+                      Visitor visitor) {
+        int qx0 = cellX(qMinLon);
+        int qy0 = cellY(qMinLat);
+        int qx1 = cellX(qMaxLon);
+        int qy1 = cellY(qMaxLat);
+        for (int cy = qy0; cy <= qy1; cy++) {
+            for (int cx = qx0; cx <= qx1; cx++) {
+                int c = cy * cellsPerSide + cx;
+                for (int i = cellStart[c]; i < cellStart[c + 1]; i++) {
+                    int s = cells[i];
+                    // A segment is in every cell its box overlaps; report it only from the
+                    // first of those cells that is also in the query.
+                    if (cx != Math.max(segmentMinCellX(s), qx0)
+                            || cy != Math.max(segmentMinCellY(s), qy0)) {
+                        continue;
+                    }
+                    int v = from[s];
+                    int w = to[s];
+                    if (Math.max(g.lon(v), g.lon(w)) < qMinLon
+                            || Math.min(g.lon(v), g.lon(w)) > qMaxLon
+                            || Math.max(g.lat(v), g.lat(w)) < qMinLat
+                            || Math.min(g.lat(v), g.lat(w)) > qMaxLat) {
+                        continue;
+                    }
+                    visitor.visit(v, w);
+                }
+            }
+        }
+    }
+
+    private int cellX(double lon) {
+        return Math.max(0, Math.min(cellsPerSide - 1, (int) Math.floor((lon - minLon) / cellLon)));
+    }
+
+    private int cellY(double lat) {
+        return Math.max(0, Math.min(cellsPerSide - 1, (int) Math.floor((lat - minLat) / cellLat)));
+    }
+
+    private int segmentMinCellX(int s) {
+        return cellX(Math.min(g.lon(from[s]), g.lon(to[s])));
+    }
+
+    private int segmentMaxCellX(int s) {
+        return cellX(Math.max(g.lon(from[s]), g.lon(to[s])));
+    }
+
+    private int segmentMinCellY(int s) {
+        return cellY(Math.min(g.lat(from[s]), g.lat(to[s])));
+    }
+
+    private int segmentMaxCellY(int s) {
+        return cellY(Math.max(g.lat(from[s]), g.lat(to[s])));
+    }
+}
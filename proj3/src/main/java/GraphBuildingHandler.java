@@ -3,8 +3,10 @@ import org.xml.sax.SAXException;
 import org.xml.sax.helpers.DefaultHandler;
 
 import java.util.Arrays;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.LinkedList;
+import java.util.Map;
 import java.util.Set;
 
 
@@ -24,6 +26,9 @@ import java.util.Set;
  * file, and your override method tells Java what to do every time it gets to the next
  * element in the file. This is a very common but strange-when-you-first-see it pattern.
  * It is similar to the Visitor pattern we discussed for graphs.
+ * <p>
+ * Each kind of element is handled by a method of its own, which OsmReader also calls
+ * directly with the values it has already parsed.
  *
  * @author Alan Yao, Maurice Lee
  */
@@ -38,10 +43,41 @@ public class GraphBuildingHandler extends DefaultHandler {
             ("motorway", "trunk", "primary", "secondary", "tertiary", "unclassified",
                     "residential", "living_street", "motorway_link", "trunk_link", "primary_link",
                     "secondary_link", "tertiary_link"));
-    private String activeState = "";
+    /**
+     * Typical speeds in miles per hour of the allowed highway types in a US city, for the
+     * ways without a usable maxspeed tag.
+     */
+    private static final Map<String, Float> DEFAULT_SPEEDS_MPH = new HashMap<>();
+    private static final float KMH_PER_MPH = 1.609344f;
+    private static final float KNOTS_PER_MPH = 0.868976f;
+
+    static {
+        DEFAULT_SPEEDS_MPH.put("motorway", 65f);
+        DEFAULT_SPEEDS_MPH.put("trunk", 55f);
+        DEFAULT_SPEEDS_MPH.put("primary", 40f);
+        DEFAULT_SPEEDS_MPH.put("secondary", 35f);
+        DEFAULT_SPEEDS_MPH.put("tertiary", 30f);
+        DEFAULT_SPEEDS_MPH.put("unclassified", 25f);
+        DEFAULT_SPEEDS_MPH.put("residential", 25f);
+        DEFAULT_SPEEDS_MPH.put("living_street", 10f);
+        DEFAULT_SPEEDS_MPH.put("motorway_link", 45f);
+        DEFAULT_SPEEDS_MPH.put("trunk_link", 40f);
+        DEFAULT_SPEEDS_MPH.put("primary_link", 30f);
+        DEFAULT_SPEEDS_MPH.put("secondary_link", 30f);
+        DEFAULT_SPEEDS_MPH.put("tertiary_link", 25f);
+    }
+
+    /**
+     * The element whose tags are being read.
+     */
+    private enum State { NONE, NODE, WAY }
+
+    private State activeState = State.NONE;
     private LinkedList<Long> potentialWay = new LinkedList<>();
     private boolean isValidWay = false;
     private String wayName = null;
+    private String wayHighway = null;
+    private float wayMaxSpeed = Float.NaN;
     private long curID;
     private double curLon;
     private double curLat;
@@ -74,70 +110,97 @@ public class GraphBuildingHandler extends DefaultHandler {
     @Override
     public void startElement(String uri, String localName, String qName, Attributes attributes)
             throws SAXException {
-        /* Some example code on how you might begin to parse XML files. */
-        if (qName.equals("node")) {
-            /* We encountered a new <node...> tag. */
-            activeState = "node";
-//            System.out.println("Node id: " + attributes.getValue("id"));
-//            System.out.println("Node lon: " + attributes.getValue("lon"));
-//            System.out.println("Node lat: " + attributes.getValue("lat"));
-
-            /* TODO Use the above information to save a "node" to somewhere. */
-            /* Hint: A graph-like structure would be nice. */
-            curID = Long.parseLong(attributes.getValue("id"));
-            curLon = Double.parseDouble(attributes.getValue("lon"));
-            curLat = Double.parseDouble(attributes.getValue("lat"));
-            g.addNode(curID, curLon, curLat);
-        } else if (qName.equals("way")) {
-            /* We encountered a new <way...> tag. */
-            activeState = "way";
-//            System.out.println("Beginning a way...");
-        } else if (activeState.equals("way") && qName.equals("nd")) {
-            /* While looking at a way, we found a <nd...> tag. */
-            //System.out.println("Id of a node in this way: " + attributes.getValue("ref"));
-
-            /* TODO Use the above id to make "possible" connections between the nodes in this way */
-            /* Hint1: It would be useful to remember what was the last node in this way. */
-            /* Hint2: Not all ways are valid. So, directly connecting the nodes here would be
-            cumbersome since you might have to remove the connections if you later see a tag that
-            makes this way invalid. Instead, think of keeping a list of possible connections and
-            remember whether this way is valid or not. */
-            long ref = Long.parseLong(attributes.getValue("ref"));
-            potentialWay.addLast(ref);
-        } else if (activeState.equals("way") && qName.equals("tag")) {
+        switch (qName) {
+            case "node":
+                node(Long.parseLong(attributes.getValue("id")),
+                        Double.parseDouble(attributes.getValue("lon")),
+                        Double.parseDouble(attributes.getValue("lat")));
+                break;
+            case "way":
+                way();
+                break;
+            case "nd":
+                wayNode(Long.parseLong(attributes.getValue("ref")));
+                break;
+            case "tag":
+                tag(attributes.getValue("k"), attributes.getValue("v"));
+                break;
+            default:
+                other();
+                break;
+        }
+    }
+
+    /**
+     * Called at the beginning of a node element.
+     */
+    void node(long id, double lon, double lat) {
+        /* We encountered a new <node...> tag. */
+        activeState = State.NODE;
+        curID = id;
+        curLon = lon;
+        curLat = lat;
+        g.addNode(curID, curLon, curLat);
+    }
+
+    /**
+     * Called at the beginning of a way element.
+     */
+    void way() {
+        /* We encountered a new <way...> tag. */
+        activeState = State.WAY;
+    }
+
+    /**
+     * Called at the beginning of an nd element, which is only expected in a way.
+     */
+    void wayNode(long ref) {
+        if (activeState != State.WAY) {
+            return;
+        }
+        /* While looking at a way, we found a <nd...> tag. Not all ways are valid, so only
+        remember the possible connections until the end of the way. */
+        potentialWay.addLast(ref);
+    }
+
+    /**
+     * Called at the beginning of a tag element, which belongs to the last node or way.
+     */
+    void tag(String k, String v) {
+        if (activeState == State.WAY) {
             /* While looking at a way, we found a <tag...> tag. */
-            String k = attributes.getValue("k");
-            String v = attributes.getValue("v");
-            if (k.equals("maxspeed")) {
-                //System.out.println("Max Speed: " + v);
-                /* TODO set the max speed of the "current way" here. */
-                int dummy;
-            } else if (k.equals("highway")) {
-                //System.out.println("Highway type: " + v);
-                /* TODO Figure out whether this way and its connections are valid. */
-                /* Hint: Setting a "flag" is good enough! */
-                if (ALLOWED_HIGHWAY_TYPES.contains(v)) {
-                    isValidWay = true;
-                }
-            } else if (k.equals("name")) {
-                //System.out.println("Way Name: " + v);
-                wayName = v;
+            switch (k) {
+                case "maxspeed":
+                    wayMaxSpeed = parseSpeed(v);
+                    break;
+                case "highway":
+                    /* Setting a "flag" is good enough to tell whether the way is valid. */
+                    if (ALLOWED_HIGHWAY_TYPES.contains(v)) {
+                        isValidWay = true;
+                        wayHighway = v;
+                    }
+                    break;
+                case "name":
+                    wayName = v;
+                    break;
+                default:
+                    break;
             }
-//            System.out.println("Tag with k=" + k + ", v=" + v + ".");
-        } else if (activeState.equals("node") && qName.equals("tag") && attributes.getValue("k")
-                .equals("name")) {
-            /* While looking at a node, we found a <tag...> with k="name". */
-            /* TODO Create a location. */
-            /* Hint: Since we found this <tag...> INSIDE a node, we should probably remember which
-            node this tag belongs to. Remember XML is parsed top-to-bottom, so probably it's the
-            last node that you looked at (check the first if-case). */
-//            System.out.println("Node's name: " + attributes.getValue("v"));
-            String name = attributes.getValue("v");
-            g.addWordToTrie(name);
-            g.addLocation(curID, curLon, curLat, name);
+        } else if (activeState == State.NODE && k.equals("name")) {
+            /* While looking at a node, we found a <tag...> with k="name". XML is parsed
+            top-to-bottom, so it belongs to the last node that we looked at. */
+            g.addWordToTrie(v);
+            g.addLocation(curID, curLon, curLat, v);
         }
     }
 
+    /**
+     * Called at the beginning of any other element, e.g. a relation, whose tags are ignored.
+     */
+    void other() {
+        activeState = State.NONE;
+    }
+
     /**
      * Receive notification of the end of an element. You may want to take specific terminating
      * actions here, like finalizing vertices or edges found.
@@ -153,20 +216,56 @@ public class GraphBuildingHandler extends DefaultHandler {
     @Override
     public void endElement(String uri, String localName, String qName) throws SAXException {
         if (qName.equals("way")) {
-            /* We are done looking at a way. (We finished looking at the nodes, speeds, etc...)*/
-            /* Hint1: If you have stored the possible connections for this way, here's your
-            chance to actually connect the nodes together if the way is valid. */
-            if (isValidWay) {
-                long v = potentialWay.removeFirst();
-                for (long w : potentialWay) {
-                    g.addEdge(v, w, wayName);
-                    v = w;
-                }
+            endWay();
+        }
+    }
+
+    /**
+     * Called at the end of a way element.
+     */
+    void endWay() {
+        /* We are done looking at a way. If the way is valid, connect its nodes together. */
+        if (isValidWay && !potentialWay.isEmpty()) {
+            float speed = Float.isNaN(wayMaxSpeed)
+                    ? DEFAULT_SPEEDS_MPH.get(wayHighway) : wayMaxSpeed;
+            long v = potentialWay.removeFirst();
+            for (long w : potentialWay) {
+                g.addEdge(v, w, wayName, speed);
+                v = w;
             }
-            wayName = null;
-            potentialWay.clear();
-            isValidWay = false;
         }
+        wayName = null;
+        wayHighway = null;
+        wayMaxSpeed = Float.NaN;
+        potentialWay.clear();
+        isValidWay = false;
+        activeState = State.NONE;
     }
 
+    /**
+     * Returns the speed of an OSM maxspeed value in miles per hour, or NaN if it is not a
+     * positive speed, e.g. "signals" or "none". A number alone is in km/h; it may also be
+     * followed by mph, km/h, kmh or knots.
+     */
+    static float parseSpeed(String maxspeed) {
+        String value = maxspeed.trim().toLowerCase();
+        float perMph = KMH_PER_MPH;
+        if (value.endsWith("mph")) {
+            perMph = 1;
+            value = value.substring(0, value.length() - "mph".length());
+        } else if (value.endsWith("km/h")) {
+            value = value.substring(0, value.length() - "km/h".length());
+        } else if (value.endsWith("kmh")) {
+            value = value.substring(0, value.length() - "kmh".length());
+        } else if (value.endsWith("knots")) {
+            perMph = KNOTS_PER_MPH;
+            value = value.substring(0, value.length() - "knots".length());
+        }
+        try {
+            float speed = Float.parseFloat(value.trim()) / perMph;
+            return speed > 0 && !Float.isInfinite(speed) ? speed : Float.NaN;
+        } catch (NumberFormatException e) {
+            return Float.NaN;
+        }
+    }
 }
@@ -1,21 +1,12 @@
-import org.xml.sax.SAXException;
-
-import java.io.File;
-import java.io.FileInputStream;
 import java.io.IOException;
 
+import java.util.Iterator;
 import java.util.Map;
 import java.util.HashMap;
 import java.util.List;
 import java.util.LinkedList;
-import java.util.Set;
-import java.util.HashSet;
 import java.util.NoSuchElementException;
 
-import javax.xml.parsers.ParserConfigurationException;
-import javax.xml.parsers.SAXParser;
-import javax.xml.parsers.SAXParserFactory;
-
 /**
  * Graph for storing all of the intersection (vertex) and road (edge) information.
  * Uses your GraphBuildingHandler to convert the XML files into a graph. Your
@@ -26,43 +17,77 @@ import javax.xml.parsers.SAXParserFactory;
  * @author Alan Yao, Josh Hug
  */
 public class GraphDB {
+    // Time a ranked search may spend looking for mistyped names.
+    private static final long FUZZY_BUDGET_NANOS = 5000000;
+
     /**
      * Your instance variables for storing the graph. You should consider
      * creating helper classes, e.g. Node, Edge, etc.
      */
 
-    // Maps from an id to a node
-    private Map<Long, Node> nodes = new HashMap<>();
-    // Maps from an edge (v, w) to its way name. Note that Pair is asymmetric.
-    private Map<Pair, String> edges = new HashMap<>();
-    // Trie for auto complete
-    private Trie trie = new Trie();
+    // Collects nodes and edges while parsing; released once the graph is built
+    private CompactGraph.Builder builder = new CompactGraph.Builder();
+    // Compressed-sparse-row graph with dense vertex indices, built by clean()
+    private CompactGraph graph;
+    // Spatial index over the vertices, used by closest()
+    private KdTree kdTree;
+    // Optional contraction hierarchy used by Router.shortestPath
+    private ContractionHierarchy contractionHierarchy;
+    // Optional landmarks for the ALT heuristic used by Router's A*
+    private Landmarks landmarks;
+    // Collects the location names for auto complete; released once the trie is built
+    private RadixTrie.Builder trieBuilder = new RadixTrie.Builder();
+    // Read-only trie for auto complete, built from trieBuilder by buildTrie()
+    private volatile RadixTrie trie;
     // Maps from a "cleaned" name to a list of locations
     private Map<String, List<Location>> locationsByName = new HashMap<>();
 
     /**
-     * Example constructor shows how to create and start an XML parser.
-     * You do not need to modify this constructor, but you're welcome to do so.
+     * Creates the graph of an OSM XML file. The file is parsed by an OsmReader.
      *
-     * @param dbPath Path to the XML file to be parsed.
+     * @param dbPath Path to the XML file to be parsed, which may be gzipped.
      */
     public GraphDB(String dbPath) {
+        this(new OsmReader(dbPath));
+    }
+
+    /**
+     * Creates the graph of the OSM file of reader, e.g. to look at its throughput afterwards.
+     */
+    GraphDB(OsmReader reader) {
         try {
-            File inputFile = new File(dbPath);
-            FileInputStream inputStream = new FileInputStream(inputFile);
-            // GZIPInputStream stream = new GZIPInputStream(inputStream);
-
-            SAXParserFactory factory = SAXParserFactory.newInstance();
-            SAXParser saxParser = factory.newSAXParser();
-            GraphBuildingHandler gbh = new GraphBuildingHandler(this);
-//            saxParser.parse(Thread.currentThread().getContextClassLoader().getResourceAsStream(dbPath), gbh);
-            saxParser.parse(inputStream, gbh);
-        } catch (ParserConfigurationException | SAXException | IOException e) {
+            reader.read(new GraphBuildingHandler(this));
+        } catch (IOException e) {
             e.printStackTrace();
         }
         clean();
     }
 
+    /**
+     * Creates a graph around an already built compact graph, e.g. one built by a test.
+     * Locations are added afterwards.
+     *
+     * @param graph The compact graph holding all vertices and edges.
+     */
+    GraphDB(CompactGraph graph) {
+        this(graph, snapTree(graph), null);
+    }
+
+    /**
+     * Creates a graph around an already built compact graph, k-d tree and, unless it is
+     * null, auto complete trie, e.g. all loaded by GraphSnapshot. Locations are added
+     * afterwards, and words only if trie is null.
+     */
+    GraphDB(CompactGraph graph, KdTree kdTree, RadixTrie trie) {
+        this.graph = graph;
+        this.builder = null;
+        this.kdTree = kdTree;
+        if (trie != null) {
+            this.trie = trie;
+            this.trieBuilder = null;
+        }
+    }
+
     void addLocation(long id, double lon, double lat, String name) {
         String cleanedName = cleanString(name);
         if (!locationsByName.containsKey(cleanedName)) {
@@ -82,15 +107,76 @@ public class GraphDB {
         return result;
     }
 
+    /**
+     * Returns all locations. Locations sharing a cleaned name are returned together,
+     * in the order they were added.
+     */
+    Iterable<Location> locations() {
+        List<Location> result = new LinkedList<>();
+        for (List<Location> group : locationsByName.values()) {
+            result.addAll(group);
+        }
+        return result;
+    }
+
     void addWordToTrie(String word) {
+        if (trieBuilder == null) {
+            throw new IllegalStateException("The trie has already been built.");
+        }
         String cleanWord = cleanString(word);
-        trie.addWord(cleanWord, word);
+        trieBuilder.addWord(cleanWord, word);
+    }
+
+    /**
+     * Freezes the words added so far into the auto complete trie. No words can be added
+     * afterwards. It is called once the graph is loaded, or else by the first search.
+     */
+    synchronized void buildTrie() {
+        if (trie == null) {
+            trie = trieBuilder.build();
+            trieBuilder = null;
+        }
     }
 
     List<String> getLocationsByPrefix(String key) {
+        if (trie == null) {
+            buildTrie();
+        }
         return trie.wordsWithPrefix(cleanString(key));
     }
 
+    /**
+     * Returns at most limit distinct location names with the prefix key, from the names
+     * shared by the most locations first. If fewer names match, the rest are names that
+     * start with a string one or two typos away from key, from the closest first.
+     */
+    List<String> getLocationsByPrefix(String key, int limit) {
+        if (trie == null) {
+            buildTrie();
+        }
+        String cleanKey = cleanString(key);
+        List<String> result = trie.topWordsWithPrefix(cleanKey, limit);
+        int edits = maxTypos(cleanKey);
+        if (result.size() < limit && edits > 0) {
+            result = trie.fuzzyWordsWithPrefix(cleanKey, edits, limit,
+                    System.nanoTime() + FUZZY_BUDGET_NANOS);
+        }
+        return result;
+    }
+
+    /**
+     * Returns how many typos to allow in a search for key: none in very short keys, which
+     * would then match almost everything, and at most two.
+     */
+    static int maxTypos(String key) {
+        if (key.length() < 3) {
+            return 0;
+        } else if (key.length() < 6) {
+            return 1;
+        }
+        return 2;
+    }
+
     /**
      * Helper to process strings into their "cleaned" form, ignoring punctuation and capitalization.
      * The original string is not modified.
@@ -103,20 +189,82 @@ public class GraphDB {
     }
 
     /**
-     * Remove nodes with no connections from the graph.
-     * While this does not guarantee that any two nodes in the remaining graph are connected,
-     * we can reasonably assume this since typically roads are connected.
+     * Remove nodes with no connections from the graph, and freeze the parsed nodes and
+     * edges into the compact CSR representation.
+     * The remaining graph may still consist of several connected components; they are
+     * kept, but only the largest one is used to snap locations to.
      */
     private void clean() {
-        Set<Long> nodesToRemove = new HashSet<>();
-        for (long v : vertices()) {
-            if (nodes.get(v).neighbors.isEmpty()) {
-                nodesToRemove.add(v);
-            }
+        graph = builder.build();
+        builder = null;
+        kdTree = snapTree(graph);
+        buildTrie();
+    }
+
+    /**
+     * Returns a k-d tree over the vertices of the largest connected component of g, so that
+     * locations are never snapped to a small island of roads, such as a parking lot or a
+     * road cut off at the edge of the map, from which most routes do not exist.
+     */
+    private static KdTree snapTree(CompactGraph g) {
+        if (g.size() == 0) {
+            return new KdTree(g);
         }
-        for (long v : nodesToRemove) {
-            nodes.remove(v);
+        return new KdTree(g, g.componentVertices(g.largestComponent()));
+    }
+
+    /**
+     * Returns the compact representation of this graph, for callers that want to work
+     * on dense int vertex indices instead of OSM ids.
+     */
+    CompactGraph compactGraph() {
+        return graph;
+    }
+
+    /**
+     * Returns the k-d tree closest() snaps with.
+     */
+    KdTree kdTree() {
+        return kdTree;
+    }
+
+    /**
+     * Returns the auto complete trie, building it first if that has not happened yet.
+     */
+    RadixTrie trie() {
+        if (trie == null) {
+            buildTrie();
         }
+        return trie;
+    }
+
+    /**
+     * Returns the contraction hierarchy attached to this graph, or null if there is none.
+     */
+    ContractionHierarchy contractionHierarchy() {
+        return contractionHierarchy;
+    }
+
+    /**
+     * Attaches a contraction hierarchy built from this graph, so that routing queries
+     * use it instead of A*.
+     */
+    void setContractionHierarchy(ContractionHierarchy ch) {
+        contractionHierarchy = ch;
+    }
+
+    /**
+     * Returns the landmarks attached to this graph, or null if there are none.
+     */
+    Landmarks landmarks() {
+        return landmarks;
+    }
+
+    /**
+     * Attaches landmarks selected for this graph, so that A* uses the ALT heuristic.
+     */
+    void setLandmarks(Landmarks landmarks) {
+        this.landmarks = landmarks;
     }
 
     /**
@@ -125,8 +273,22 @@ public class GraphDB {
      * @return An iterable of id's of all vertices in the graph.
      */
     Iterable<Long> vertices() {
-        //YOUR CODE HERE, this currently returns only an empty list.
-        return nodes.keySet();
+        return () -> new Iterator<Long>() {
+            private int v = 0;
+
+            @Override
+            public boolean hasNext() {
+                return v < graph.size();
+            }
+
+            @Override
+            public Long next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                return graph.id(v++);
+            }
+        };
     }
 
     /**
@@ -136,10 +298,25 @@ public class GraphDB {
      * @return An iterable of the ids of the neighbors of v.
      */
     Iterable<Long> adjacent(long v) {
-        if (!nodes.containsKey(v)) {
-            throw new NoSuchElementException("Node v is not in graph!");
-        }
-        return nodes.get(v).neighbors;
+        int index = graph.indexOf(v);
+        int start = graph.edgeStart(index);
+        int end = graph.edgeEnd(index);
+        return () -> new Iterator<Long>() {
+            private int e = start;
+
+            @Override
+            public boolean hasNext() {
+                return e < end;
+            }
+
+            @Override
+            public Long next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                return graph.id(graph.target(e++));
+            }
+        };
     }
 
     /**
@@ -199,22 +376,17 @@ public class GraphDB {
 
     /**
      * Returns the vertex closest to the given longitude and latitude.
+     * Only vertices of the largest connected component are considered, see snapTree.
+     * Uses a k-d tree built at load time, so this takes O(log n) expected time.
      *
      * @param lon The target longitude.
      * @param lat The target latitude.
-     * @return The id of the node in the graph closest to the target.
+     * @return The id of the node in the graph closest to the target, or -1 if the graph is
+     * empty.
      */
     long closest(double lon, double lat) {
-        long closestNode = -1;
-        double closestDist = Double.POSITIVE_INFINITY;
-        for (long v : vertices()) {
-            double dist = distance(lon(v), lat(v), lon, lat);
-            if (dist < closestDist) {
-                closestDist = dist;
-                closestNode = v;
-            }
-        }
-        return closestNode;
+        int v = kdTree.nearest(lon, lat);
+        return v < 0 ? -1 : graph.id(v);
     }
 
     /**
@@ -224,10 +396,7 @@ public class GraphDB {
      * @return The longitude of the vertex.
      */
     double lon(long v) {
-        if (!nodes.containsKey(v)) {
-            throw new NoSuchElementException("Node v is not in graph!");
-        }
-        return nodes.get(v).lon;
+        return graph.lon(graph.indexOf(v));
     }
 
     /**
@@ -237,10 +406,7 @@ public class GraphDB {
      * @return The latitude of the vertex.
      */
     double lat(long v) {
-        if (!nodes.containsKey(v)) {
-            throw new NoSuchElementException("Node v is not in graph!");
-        }
-        return nodes.get(v).lat;
+        return graph.lat(graph.indexOf(v));
     }
 
     /**
@@ -251,69 +417,29 @@ public class GraphDB {
      * @return edge name of (v, w)
      */
     String getEdgeName(long v, long w) {
-        Pair key = new Pair(v, w);
-        if (!edges.containsKey(key)) {
+        int from = graph.index(v);
+        int to = graph.index(w);
+        int e = from < 0 || to < 0 ? -1 : graph.edge(from, to);
+        if (e < 0) {
             throw new NoSuchElementException("Edge (v, w) does not exist");
         }
-        return edges.get(key);
+        return graph.name(e);
     }
 
     /* Helper Methods */
     void addNode(long id, double lon, double lat) {
-        Node n = new Node(id, lon, lat);
-        nodes.put(id, n);
+        builder.addNode(id, lon, lat);
     }
 
     void addEdge(long v, long w, String name) {
-        nodes.get(v).neighbors.add(w);
-        nodes.get(w).neighbors.add(v);
-        edges.put(new Pair(v, w), name);
-        edges.put(new Pair(w, v), name);
-    }
-
-    private static class Node {
-        private final long id;
-        private final double lon;
-        private final double lat;
-        private LinkedList<Long> neighbors;
-
-        Node(long id, double lon, double lat) {
-            this.id = id;
-            this.lon = lon;
-            this.lat = lat;
-            neighbors = new LinkedList<>();
-        }
+        addEdge(v, w, name, CompactGraph.DEFAULT_SPEED_MPH);
     }
 
-    private static class Pair {
-        private final long v;
-        private final long w;
-
-        Pair(long v, long w) {
-            this.v = v;
-            this.w = w;
-        }
-
-        @Override
-        public boolean equals(Object obj) {
-            if (this == obj) {
-                return true;
-            }
-            if (obj == null || getClass() != obj.getClass()) {
-                return false;
-            }
-            Pair other = (Pair) obj;
-            return v == other.v && w == other.w;
-        }
-
-        @Override
-        public int hashCode() {
-            /// This hashCode algo is from "Effective Java"
-            int result = 1;
-            result = 31 * result + (int) (v ^ (v >>> 32));
-            result = 31 * result + (int) (w ^ (w >>> 32));
-            return result;
-        }
+    /**
+     * Adds a road segment with a speed limit, in miles per hour.
+     */
+    void addEdge(long v, long w, String name, float speedMph) {
+        builder.addEdge(v, w, speedMph, name);
     }
 
     static class Location {
@@ -330,6 +456,22 @@ public class GraphDB {
         public Map<String, Object> getMap() {
             return info;
         }
+
+        long id() {
+            return (long) info.get("id");
+        }
+
+        double lon() {
+            return (double) info.get("lon");
+        }
+
+        double lat() {
+            return (double) info.get("lat");
+        }
+
+        String name() {
+            return (String) info.get("name");
+        }
     }
 
 }
@@ -0,0 +1,217 @@
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.DoubleBuffer;
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+import java.nio.LongBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Reads and writes a parsed GraphDB as a versioned binary file, so that a server can
+ * start without re-parsing the OSM XML. The file is mapped with FileChannel.map, and the
+ * arrays of the CompactGraph and the KdTree are buffer views over the mapping rather than
+ * copies, so they are backed by the OS page cache and shared between JVMs that load the
+ * same file. What is derived from them (edge lengths and travel times, connected
+ * components, the k-d tree and the autocomplete trie) is stored as well, so loading does
+ * not compute it again. Only the way names, the locations and the trie are copied into
+ * the heap.
+ * <p>
+ * Layout (big-endian): <br>
+ * int magic, int version, <br>
+ * the graph (see CompactGraph.write), starting at a multiple of 8 bytes so that its long
+ * and double arrays are aligned, <br>
+ * the k-d tree (see KdTree.write), also aligned to 8 bytes, <br>
+ * int numLocations, numLocations * (long id, double lon, double lat, string name), <br>
+ * the autocomplete trie (see RadixTrie.write). <br>
+ * A string is an int byte length followed by its UTF-8 bytes.
+ */
+public class GraphSnapshot {
+    private static final int MAGIC = 0x424d4150; // "BMAP"
+    private static final int VERSION = 3;
+    private static final String OSM_DB_PATH = "../library-sp18/data/berkeley-2018.osm.xml";
+    private static final String SNAPSHOT_PATH = "../library-sp18/data/berkeley-2018.snapshot";
+
+    /**
+     * Parses an OSM XML file and writes its snapshot.
+     * Usage: GraphSnapshot [osmPath] [snapshotPath]
+     */
+    public static void main(String[] args) throws IOException {
+        String osmPath = args.length > 0 ? args[0] : OSM_DB_PATH;
+        String snapshotPath = args.length > 1 ? args[1] : SNAPSHOT_PATH;
+
+        long start = System.currentTimeMillis();
+        GraphDB g = new GraphDB(osmPath);
+        long parsed = System.currentTimeMillis();
+        write(g, snapshotPath);
+        long written = System.currentTimeMillis();
+        read(snapshotPath);
+        long loaded = System.currentTimeMillis();
+
+        System.out.println("Parsed " + osmPath + " in " + (parsed - start) + " ms.");
+        System.out.println("Wrote " + snapshotPath + " (" + new File(snapshotPath).length()
+                + " bytes) in " + (written - parsed) + " ms.");
+        System.out.println("Loaded snapshot in " + (loaded - written) + " ms.");
+    }
+
+    /**
+     * Writes the graph to the given path.
+     *
+     * @param g    The graph to write.
+     * @param path Path of the snapshot file.
+     * @throws IOException If the file cannot be written.
+     */
+    public static void write(GraphDB g, String path) throws IOException {
+        List<GraphDB.Location> locations = new ArrayList<>();
+        for (GraphDB.Location location : g.locations()) {
+            locations.add(location);
+        }
+
+        try (DataOutputStream out = new DataOutputStream(
+                new BufferedOutputStream(new FileOutputStream(path), 1 << 16))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            g.compactGraph().write(out);
+            g.kdTree().write(out);
+
+            out.writeInt(locations.size());
+            for (GraphDB.Location location : locations) {
+                out.writeLong(location.id());
+                out.writeDouble(location.lon());
+                out.writeDouble(location.lat());
+                writeString(out, location.name());
+            }
+            g.trie().write(out);
+        }
+    }
+
+    /**
+     * Loads a graph from a snapshot file. The graph and its k-d tree read their arrays
+     * from the mapped file, which stays mapped as long as they are reachable.
+     *
+     * @param path Path of the snapshot file.
+     * @return The loaded graph.
+     * @throws IOException If the file cannot be read or is not a supported snapshot.
+     */
+    public static GraphDB read(String path) throws IOException {
+        MappedByteBuffer buf;
+        try (FileChannel channel = FileChannel.open(Paths.get(path), StandardOpenOption.READ)) {
+            if (channel.size() > Integer.MAX_VALUE) {
+                throw new IOException("Snapshot is too large to map: " + path);
+            }
+            buf = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+
+        if (buf.getInt() != MAGIC) {
+            throw new IOException("Not a graph snapshot: " + path);
+        }
+        int version = buf.getInt();
+        if (version != VERSION) {
+            throw new IOException("Unsupported snapshot version " + version + ": " + path);
+        }
+        CompactGraph cg = CompactGraph.map(buf);
+        KdTree kdTree = KdTree.map(cg, buf);
+
+        List<GraphDB.Location> locations = new ArrayList<>();
+        int numLocations = buf.getInt();
+        for (int i = 0; i < numLocations; i++) {
+            long id = buf.getLong();
+            double locLon = buf.getDouble();
+            double locLat = buf.getDouble();
+            locations.add(new GraphDB.Location(id, locLon, locLat, readString(buf)));
+        }
+        GraphDB g = new GraphDB(cg, kdTree, RadixTrie.read(buf));
+        for (GraphDB.Location location : locations) {
+            g.addLocation(location.id(), location.lon(), location.lat(), location.name());
+        }
+        return g;
+    }
+
+    /**
+     * Pads out with zeros up to a multiple of 8 bytes.
+     */
+    static void align(DataOutputStream out) throws IOException {
+        while (out.size() % 8 != 0) {
+            out.writeByte(0);
+        }
+    }
+
+    /**
+     * Moves the position of buf up to a multiple of 8 bytes, past the padding written by
+     * align(DataOutputStream).
+     */
+    static void align(ByteBuffer buf) {
+        skip(buf, (8 - buf.position() % 8) % 8);
+    }
+
+    /**
+     * Returns a view of the next count longs of buf, and moves its position past them.
+     */
+    static LongBuffer longs(ByteBuffer buf, int count) {
+        LongBuffer view = slice(buf, 8L * count).asLongBuffer();
+        skip(buf, 8L * count);
+        return view;
+    }
+
+    /**
+     * Returns a view of the next count doubles of buf, and moves its position past them.
+     */
+    static DoubleBuffer doubles(ByteBuffer buf, int count) {
+        DoubleBuffer view = slice(buf, 8L * count).asDoubleBuffer();
+        skip(buf, 8L * count);
+        return view;
+    }
+
+    /**
+     * Returns a view of the next count ints of buf, and moves its position past them.
+     */
+    static IntBuffer ints(ByteBuffer buf, int count) {
+        IntBuffer view = slice(buf, 4L * count).asIntBuffer();
+        skip(buf, 4L * count);
+        return view;
+    }
+
+    /**
+     * Returns a view of the next count floats of buf, and moves its position past them.
+     */
+    static FloatBuffer floats(ByteBuffer buf, int count) {
+        FloatBuffer view = slice(buf, 4L * count).asFloatBuffer();
+        skip(buf, 4L * count);
+        return view;
+    }
+
+    private static ByteBuffer slice(ByteBuffer buf, long bytes) {
+        ByteBuffer slice = buf.slice();
+        // Cast to Buffer, see skip.
+        ((Buffer) slice).limit((int) bytes);
+        return slice;
+    }
+
+    private static void skip(ByteBuffer buf, long bytes) {
+        // Cast to Buffer so the call also links on Java 8, where position(int) is not
+        // overridden by ByteBuffer.
+        ((Buffer) buf).position((int) (buf.position() + bytes));
+    }
+
+    static void writeString(DataOutputStream out, String s) throws IOException {
+        byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    static String readString(ByteBuffer buf) {
+        byte[] bytes = new byte[buf.getInt()];
+        buf.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,116 @@
+import java.util.NoSuchElementException;
+
+/**
+ * Indexed binary min-heap of the ints 0 ... n - 1 keyed by doubles, with decrease-key.
+ * Unlike a PriorityQueue of node objects, each vertex is in the queue at most once, and
+ * nothing is allocated after construction.
+ */
+public class IndexMinPQ {
+    // heap[i] is the index at heap position i (1-based), pos[v] is the position of v or 0.
+    private final int[] heap;
+    private final int[] pos;
+    private final double[] keys;
+    private int size = 0;
+
+    /**
+     * Creates an empty queue for the indices 0 ... n - 1.
+     */
+    public IndexMinPQ(int n) {
+        heap = new int[n + 1];
+        pos = new int[n];
+        keys = new double[n];
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean contains(int v) {
+        return pos[v] != 0;
+    }
+
+    /**
+     * Removes all indices. Takes time proportional to the current size.
+     */
+    public void clear() {
+        for (int i = 1; i <= size; i++) {
+            pos[heap[i]] = 0;
+        }
+        size = 0;
+    }
+
+    /**
+     * Inserts v with the given key, or lowers its key if v is already in the queue with a
+     * larger one.
+     */
+    public void insertOrDecrease(int v, double key) {
+        if (pos[v] == 0) {
+            size += 1;
+            heap[size] = v;
+            pos[v] = size;
+            keys[v] = key;
+            swim(size);
+        } else if (key < keys[v]) {
+            keys[v] = key;
+            swim(pos[v]);
+        }
+    }
+
+    /**
+     * Returns the smallest key.
+     */
+    public double minKey() {
+        if (size == 0) {
+            throw new NoSuchElementException("Priority queue is empty!");
+        }
+        return keys[heap[1]];
+    }
+
+    /**
+     * Removes the index with the smallest key and returns it.
+     */
+    public int delMin() {
+        if (size == 0) {
+            throw new NoSuchElementException("Priority queue is empty!");
+        }
+        int min = heap[1];
+        exchange(1, size);
+        size -= 1;
+        sink(1);
+        pos[min] = 0;
+        return min;
+    }
+
+    private void swim(int i) {
+        while (i > 1 && keys[heap[i / 2]] > keys[heap[i]]) {
+            exchange(i, i / 2);
+            i = i / 2;
+        }
+    }
+
+    private void sink(int i) {
+        while (2 * i <= size) {
+            int child = 2 * i;
+            if (child < size && keys[heap[child + 1]] < keys[heap[child]]) {
+                child += 1;
+            }
+            if (keys[heap[i]] <= keys[heap[child]]) {
+                break;
+            }
+            exchange(i, child);
+            i = child;
+        }
+    }
+
+    private void exchange(int i, int j) {
+        int tmp = heap[i];
+        heap[i] = heap[j];
+        heap[j] = tmp;
+        pos[heap[i]] = i;
+        pos[heap[j]] = j;
+    }
+}
@@ -0,0 +1,187 @@
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+
+/**
+ * 2-d tree over the vertices of a CompactGraph, used to find the vertex closest to a
+ * location in O(log n) expected time instead of scanning every vertex.
+ * The tree is implicit: the vertices are permuted in one int array so that the median
+ * of each range [lo, hi) sits at its middle, splitting on longitude at even depths and
+ * on latitude at odd depths.
+ * Distances are exact great-circle distances, and subtrees are pruned with a lower bound
+ * of the distance to their splitting meridian or parallel, so the result is the same
+ * vertex a linear scan would return.
+ * <p>
+ * A tree loaded from a GraphSnapshot reads its array from the mapped file.
+ */
+public class KdTree {
+    private static final double EARTH_RADIUS = 3963;
+
+    private final CompactGraph g;
+    private final IntBuffer tree;
+
+    /**
+     * Builds a tree over all vertices of g.
+     */
+    public KdTree(CompactGraph g) {
+        this(g, allVertices(g.size()));
+    }
+
+    /**
+     * Builds a tree over the given vertices of g. The array is taken over by the tree.
+     */
+    public KdTree(CompactGraph g, int[] vertices) {
+        this.g = g;
+        this.tree = IntBuffer.wrap(vertices);
+        build(0, vertices.length, 0);
+    }
+
+    private KdTree(CompactGraph g, IntBuffer tree) {
+        this.g = g;
+        this.tree = tree;
+    }
+
+    /**
+     * Returns the tree over g whose snapshot section, written by write, starts at the
+     * position of buf, and moves the position past it. The tree reads its array from buf.
+     */
+    static KdTree map(CompactGraph g, ByteBuffer buf) {
+        GraphSnapshot.align(buf);
+        int size = buf.getInt();
+        return new KdTree(g, GraphSnapshot.ints(buf, size));
+    }
+
+    /**
+     * Writes the snapshot section of this tree, which map reads back.
+     */
+    void write(DataOutputStream out) throws IOException {
+        GraphSnapshot.align(out);
+        out.writeInt(size());
+        for (int i = 0; i < size(); i++) {
+            out.writeInt(tree.get(i));
+        }
+    }
+
+    private static int[] allVertices(int n) {
+        int[] vertices = new int[n];
+        for (int v = 0; v < n; v++) {
+            vertices[v] = v;
+        }
+        return vertices;
+    }
+
+    /**
+     * Returns the number of vertices in the tree.
+     */
+    public int size() {
+        return tree.limit();
+    }
+
+    /**
+     * Returns the index of the vertex closest to the given location, or -1 if the tree
+     * is empty. Ties are broken in favor of the smaller vertex index.
+     */
+    public int nearest(double lon, double lat) {
+        Nearest best = new Nearest();
+        nearest(0, size(), 0, lon, lat, best);
+        return best.v;
+    }
+
+    private static class Nearest {
+        int v = -1;
+        double dist = Double.POSITIVE_INFINITY;
+    }
+
+    private void nearest(int lo, int hi, int depth, double lon, double lat, Nearest best) {
+        if (lo >= hi) {
+            return;
+        }
+        int mid = (lo + hi) >>> 1;
+        int v = tree.get(mid);
+        double dist = GraphDB.distance(g.lon(v), g.lat(v), lon, lat);
+        if (dist < best.dist || (dist == best.dist && v < best.v)) {
+            best.dist = dist;
+            best.v = v;
+        }
+
+        double diff = depth % 2 == 0 ? lon - g.lon(v) : lat - g.lat(v);
+        int nearLo = diff < 0 ? lo : mid + 1;
+        int nearHi = diff < 0 ? mid : hi;
+        int farLo = diff < 0 ? mid + 1 : lo;
+        int farHi = diff < 0 ? hi : mid;
+        nearest(nearLo, nearHi, depth + 1, lon, lat, best);
+        if (farLo < farHi && splitDistance(depth, diff, lat) <= best.dist) {
+            nearest(farLo, farHi, depth + 1, lon, lat, best);
+        }
+    }
+
+    /**
+     * Returns a lower bound of the distance from a point to anything on the other side of
+     * a split, given the signed coordinate difference between the point and the split.
+     */
+    private static double splitDistance(int depth, double diff, double lat) {
+        if (depth % 2 == 1) {
+            // Any path to another parallel spans at least the latitude difference.
+            return EARTH_RADIUS * Math.toRadians(Math.abs(diff));
+        }
+        double dlambda = Math.toRadians(Math.abs(diff));
+        if (dlambda >= Math.PI / 2) {
+            return 0;
+        }
+        // Cross-track distance from the point to the splitting meridian.
+        return EARTH_RADIUS * Math.asin(Math.sin(dlambda) * Math.cos(Math.toRadians(lat)));
+    }
+
+    /**
+     * Arranges tree[lo, hi) so that its median by the depth's coordinate is at the middle,
+     * then recursively does the same for both halves.
+     */
+    private void build(int lo, int hi, int depth) {
+        if (hi - lo <= 1) {
+            return;
+        }
+        int mid = (lo + hi) >>> 1;
+        select(lo, hi - 1, mid, depth % 2 == 0);
+        build(lo, mid, depth + 1);
+        build(mid + 1, hi, depth + 1);
+    }
+
+    /**
+     * Quickselect: partially sorts tree[lo..hi] so that tree[k] is the element that would
+     * be there if the range were sorted by longitude (or latitude).
+     */
+    private void select(int lo, int hi, int k, boolean byLon) {
+        while (lo < hi) {
+            double pivot = coordinate(tree.get((lo + hi) >>> 1), byLon);
+            int i = lo;
+            int j = hi;
+            while (i <= j) {
+                while (coordinate(tree.get(i), byLon) < pivot) {
+                    i++;
+                }
+                while (coordinate(tree.get(j), byLon) > pivot) {
+                    j--;
+                }
+                if (i <= j) {
+                    int tmp = tree.get(i);
+                    tree.put(i, tree.get(j));
+                    tree.put(j, tmp);
+                    i++;
+                    j--;
+                }
+            }
+            if (k <= j) {
+                hi = j;
+            } else if (k >= i) {
+                lo = i;
+            } else {
+                return;
+            }
+        }
+    }
+
+    private double coordinate(int v, boolean byLon) {
+        return byLon ? g.lon(v) : g.lat(v);
+    }
+}
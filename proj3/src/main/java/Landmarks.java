@@ -0,0 +1,201 @@
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * Landmark distances for the ALT (A*, Landmarks, Triangle inequality) heuristic.
+ * For a landmark L, the triangle inequality gives |d(L, t) - d(L, v)| <= d(v, t), so the
+ * maximum of this bound over all landmarks is an admissible and consistent A* potential.
+ * It is much tighter than the great-circle distance when roads have to go around rivers,
+ * hills or the bay.
+ * <p>
+ * Landmarks are picked by farthest-point selection: each new landmark is the vertex whose
+ * road distance to the nearest landmark chosen so far is the largest, among the vertices
+ * of the largest connected component. Roads are two-way, so a single distance array per
+ * landmark serves as both "from" and "to" distances.
+ */
+public class Landmarks {
+    private static final int MAGIC = 0x414c5447; // "ALTG"
+    private static final int VERSION = 2;
+    private static final int DEFAULT_NUM_LANDMARKS = 16;
+    private static final String OSM_DB_PATH = "../library-sp18/data/berkeley-2018.osm.xml";
+    private static final String ALT_PATH = "../library-sp18/data/berkeley-2018.alt";
+
+    private final CompactGraph g;
+    private final int[] landmarks;
+    // distances[i][v] is the road distance between landmark i and v, or infinity.
+    private final double[][] distances;
+
+    private Landmarks(CompactGraph g, int[] landmarks, double[][] distances) {
+        this.g = g;
+        this.landmarks = landmarks;
+        this.distances = distances;
+    }
+
+    /**
+     * Selects landmarks for an OSM file and writes their distances.
+     * Usage: Landmarks [osmPath] [altPath] [numLandmarks]
+     */
+    public static void main(String[] args) throws IOException {
+        String osmPath = args.length > 0 ? args[0] : OSM_DB_PATH;
+        String altPath = args.length > 1 ? args[1] : ALT_PATH;
+        int k = args.length > 2 ? Integer.parseInt(args[2]) : DEFAULT_NUM_LANDMARKS;
+        GraphDB g = new GraphDB(osmPath);
+
+        long start = System.currentTimeMillis();
+        Landmarks landmarks = select(g.compactGraph(), k);
+        long selected = System.currentTimeMillis();
+        landmarks.save(altPath);
+
+        System.out.println("Selected " + landmarks.size() + " landmarks in "
+                + (selected - start) + " ms.");
+        System.out.println("Wrote " + altPath);
+    }
+
+    /**
+     * Selects up to k landmarks and computes their distances to every vertex.
+     *
+     * @param g The graph.
+     * @param k The number of landmarks.
+     * @return The landmarks.
+     */
+    public static Landmarks select(CompactGraph g, int k) {
+        int n = g.size();
+        int[] chosen = new int[Math.min(k, n)];
+        double[][] distances = new double[chosen.length][];
+        if (n == 0) {
+            return new Landmarks(g, chosen, distances);
+        }
+        // Start from the vertex farthest from an arbitrary one of the largest component.
+        // Landmarks on an island would bound no distances in the rest of the graph.
+        int root = g.componentVertices(g.largestComponent())[0];
+        double[] minDist = shortestDistances(g, root);
+        for (int i = 0; i < chosen.length; i++) {
+            int farthest = root;
+            for (int v = 0; v < n; v++) {
+                if (minDist[v] != Double.POSITIVE_INFINITY && minDist[v] > minDist[farthest]) {
+                    farthest = v;
+                }
+            }
+            chosen[i] = farthest;
+            distances[i] = shortestDistances(g, farthest);
+            if (i == 0) {
+                minDist = distances[0].clone();
+            } else {
+                for (int v = 0; v < n; v++) {
+                    minDist[v] = Math.min(minDist[v], distances[i][v]);
+                }
+            }
+        }
+        return new Landmarks(g, chosen, distances);
+    }
+
+    /**
+     * Dijkstra from src over great-circle edge lengths.
+     */
+    private static double[] shortestDistances(CompactGraph g, int src) {
+        double[] dist = new double[g.size()];
+        Arrays.fill(dist, Double.POSITIVE_INFINITY);
+        MinHeap heap = new MinHeap();
+        dist[src] = 0;
+        heap.push(0, src);
+        while (!heap.isEmpty()) {
+            double d = heap.topKey();
+            int v = heap.pop();
+            if (d > dist[v]) {
+                continue;
+            }
+            for (int e = g.edgeStart(v); e < g.edgeEnd(v); e++) {
+                int w = g.target(e);
+                double curDist = d + g.length(e);
+                if (curDist < dist[w]) {
+                    dist[w] = curDist;
+                    heap.push(curDist, w);
+                }
+            }
+        }
+        return dist;
+    }
+
+    /**
+     * Returns the number of landmarks.
+     */
+    int size() {
+        return landmarks.length;
+    }
+
+    /**
+     * Returns a lower bound of the road distance between vertices v and t.
+     */
+    double lowerBound(int v, int t) {
+        double bound = 0;
+        for (double[] d : distances) {
+            double dv = d[v];
+            double dt = d[t];
+            if (dv != Double.POSITIVE_INFINITY && dt != Double.POSITIVE_INFINITY) {
+                bound = Math.max(bound, Math.abs(dt - dv));
+            }
+        }
+        return bound;
+    }
+
+    /**
+     * Writes the landmarks and their distances to a file.
+     *
+     * @param path Path of the file to write.
+     * @throws IOException If the file cannot be written.
+     */
+    public void save(String path) throws IOException {
+        try (DataOutputStream out = new DataOutputStream(
+                new BufferedOutputStream(new FileOutputStream(path), 1 << 16))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(g.size());
+            out.writeInt(g.numEdges());
+            out.writeLong(g.checksum());
+            out.writeInt(landmarks.length);
+            for (int i = 0; i < landmarks.length; i++) {
+                out.writeInt(landmarks[i]);
+                for (double d : distances[i]) {
+                    out.writeDouble(d);
+                }
+            }
+        }
+    }
+
+    /**
+     * Reads landmarks written by save.
+     *
+     * @param path Path of the file to read.
+     * @param g    The graph the landmarks were selected for.
+     * @return The landmarks.
+     * @throws IOException If the file cannot be read, or was written for a different graph.
+     */
+    public static Landmarks load(String path, CompactGraph g) throws IOException {
+        try (DataInputStream in = new DataInputStream(
+                new BufferedInputStream(new FileInputStream(path), 1 << 16))) {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+                throw new IOException("Not a supported landmark file: " + path);
+            }
+            if (in.readInt() != g.size() || in.readInt() != g.numEdges()
+                    || in.readLong() != g.checksum()) {
+                throw new IOException("Landmarks do not match graph: " + path);
+            }
+            int k = in.readInt();
+            int[] landmarks = new int[k];
+            double[][] distances = new double[k][g.size()];
+            for (int i = 0; i < k; i++) {
+                landmarks[i] = in.readInt();
+                for (int v = 0; v < g.size(); v++) {
+                    distances[i][v] = in.readDouble();
+                }
+            }
+            return new Landmarks(g, landmarks, distances);
+        }
+    }
+}
@@ -0,0 +1,136 @@
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.ToLongFunction;
+
+/**
+ * A least recently used cache bounded by the total weight of its values (e.g. their size
+ * in bytes) rather than by their number. It is thread safe. Values are loaded by the
+ * caller outside of the cache's lock, so a slow load does not block other lookups; two
+ * threads missing on the same key at once may both load it, and the later put wins.
+ */
+public class LruCache<K, V> {
+    private final long capacity;
+    private final ToLongFunction<V> weigher;
+    // Iterates from the least to the most recently used entry.
+    private final LinkedHashMap<K, V> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private long weight = 0;
+    private long hits = 0;
+    private long misses = 0;
+    private long evictions = 0;
+
+    /**
+     * Creates an empty cache.
+     *
+     * @param capacity The maximum total weight of the cached values.
+     * @param weigher  Returns the weight of a value, which must not change while cached.
+     */
+    public LruCache(long capacity, ToLongFunction<V> weigher) {
+        this.capacity = capacity;
+        this.weigher = weigher;
+    }
+
+    /**
+     * Returns the value of key and marks it as most recently used, or null if it is not
+     * cached.
+     */
+    public synchronized V get(K key) {
+        V value = entries.get(key);
+        if (value == null) {
+            misses += 1;
+        } else {
+            hits += 1;
+        }
+        return value;
+    }
+
+    /**
+     * Returns whether key is cached, without counting a hit or a miss or changing its
+     * recency.
+     */
+    public synchronized boolean containsKey(K key) {
+        return entries.containsKey(key);
+    }
+
+    /**
+     * Caches a value, evicting least recently used values until the total weight fits.
+     * A value heavier than the whole capacity is not cached.
+     */
+    public synchronized void put(K key, V value) {
+        long w = weigher.applyAsLong(value);
+        V old = entries.remove(key);
+        if (old != null) {
+            weight -= weigher.applyAsLong(old);
+        }
+        if (w > capacity) {
+            return;
+        }
+        entries.put(key, value);
+        weight += w;
+        Iterator<Map.Entry<K, V>> it = entries.entrySet().iterator();
+        while (weight > capacity) {
+            Map.Entry<K, V> eldest = it.next();
+            weight -= weigher.applyAsLong(eldest.getValue());
+            it.remove();
+            evictions += 1;
+        }
+    }
+
+    /**
+     * Removes the value of key, if any, and returns it.
+     */
+    public synchronized V remove(K key) {
+        V old = entries.remove(key);
+        if (old != null) {
+            weight -= weigher.applyAsLong(old);
+        }
+        return old;
+    }
+
+    /**
+     * Removes all values. The counters are kept.
+     */
+    public synchronized void clear() {
+        entries.clear();
+        weight = 0;
+    }
+
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    public synchronized long weight() {
+        return weight;
+    }
+
+    public long capacity() {
+        return capacity;
+    }
+
+    public synchronized long hits() {
+        return hits;
+    }
+
+    public synchronized long misses() {
+        return misses;
+    }
+
+    public synchronized long evictions() {
+        return evictions;
+    }
+
+    /**
+     * Returns the counters and occupancy of the cache, e.g. for a JSON status response.
+     */
+    public synchronized Map<String, Object> stats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("entries", entries.size());
+        stats.put("weight", weight);
+        stats.put("capacity", capacity);
+        stats.put("hits", hits);
+        stats.put("misses", misses);
+        stats.put("evictions", evictions);
+        stats.put("hit_rate", hits + misses == 0 ? 0.0 : (double) hits / (hits + misses));
+        return stats;
+    }
+}
@@ -4,15 +4,29 @@ import java.awt.BasicStroke;
 import java.awt.Color;
 import java.io.ByteArrayOutputStream;
 import java.io.File;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
 import java.util.Base64;
 import java.util.HashMap;
-import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.awt.image.BufferedImage;
+import java.awt.image.DataBuffer;
+import javax.imageio.IIOImage;
 import javax.imageio.ImageIO;
+import javax.imageio.ImageWriteParam;
+import javax.imageio.ImageWriter;
+import javax.imageio.stream.ImageOutputStream;
 import java.io.IOException;
+import java.io.OutputStream;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 
 /* Maven is used to pull in these dependencies. */
@@ -45,6 +59,19 @@ public class MapServer {
      * HTTP failed response.
      */
     private static final int HALT_RESPONSE = 403;
+    /**
+     * HTTP response for a resource that does not exist.
+     */
+    private static final int NOT_FOUND_RESPONSE = 404;
+    /**
+     * HTTP response telling the client its cached copy is still valid.
+     */
+    private static final int NOT_MODIFIED_RESPONSE = 304;
+    /**
+     * Tile files never change while the server runs, so clients and proxies may keep them
+     * for a day before revalidating.
+     */
+    private static final String TILE_CACHE_CONTROL = "public, max-age=86400";
     /**
      * Route stroke information: typically roads are not more than 5px wide.
      */
@@ -57,11 +84,67 @@ public class MapServer {
      * The tile images are in the IMG_ROOT folder.
      */
     private static final String IMG_ROOT = "../library-sp18/data/proj3_imgs/";
+    /**
+     * Tiles that are not in IMG_ROOT, such as those deeper than the prerendered ones, are
+     * drawn from the graph and kept in the RENDERED_IMG_ROOT folder.
+     */
+    private static final String RENDERED_IMG_ROOT = "../library-sp18/data/proj3_rendered/";
+    /**
+     * The deepest depth rasters are made of. Depths beyond the prerendered
+     * Rasterer.DEFAULT_MAX_DEPTH are drawn from the graph.
+     */
+    private static final int RASTER_MAX_DEPTH = 10;
     /**
      * The OSM XML file path. Downloaded from <a href="http://download.bbbike.org/osm/">here</a>
      * using custom region selection.
      **/
     private static final String OSM_DB_PATH = "../library-sp18/data/berkeley-2018.osm.xml";
+    /**
+     * Binary snapshot of the parsed OSM file, written by GraphSnapshot. It is used instead of
+     * the XML file when it exists and is newer than it.
+     */
+    private static final String GRAPH_SNAPSHOT_PATH =
+            "../library-sp18/data/berkeley-2018.snapshot";
+    /**
+     * Contraction hierarchy of the graph, written by ContractionHierarchy. When it exists,
+     * routes are found with it instead of A*.
+     */
+    private static final String CH_PATH = "../library-sp18/data/berkeley-2018.ch";
+    /**
+     * Landmark distances of the graph, written by Landmarks. When they exist, A* uses the
+     * ALT heuristic.
+     */
+    private static final String ALT_PATH = "../library-sp18/data/berkeley-2018.alt";
+    /**
+     * At most this many sessions have a route stored; the least recently used are dropped.
+     */
+    private static final int MAX_ROUTE_SESSIONS = 10000;
+    /**
+     * The route of a session is forgotten after it has been idle for this long.
+     */
+    private static final long ROUTE_TTL_MILLIS = 30 * 60 * 1000;
+    /**
+     * Decoded tiles are cached in memory, up to this many bytes of pixel data.
+     */
+    private static final long TILE_CACHE_BYTES = 256L * 1024 * 1024;
+    /**
+     * The tiles of depths 0 through this one are decoded into the cache at startup.
+     */
+    private static final int TILE_WARM_DEPTH = 3;
+    /**
+     * Finished raster responses are cached in memory, up to this many bytes.
+     */
+    private static final long RASTER_CACHE_BYTES = 64L * 1024 * 1024;
+    /**
+     * Number of threads decoding tiles, shared by all raster requests.
+     */
+    private static final int TILE_LOADER_THREADS =
+            Math.min(8, Runtime.getRuntime().availableProcessors());
+    /**
+     * PNG compression quality of rasters, from 0 (smallest, slowest) to 1 (largest,
+     * fastest). Rasters are sent once and cached, so a fast, light compression pays off.
+     */
+    static final float PNG_COMPRESSION_QUALITY = 0.75f;
     /**
      * Each raster request to the server will have the following parameters
      * as keys in the params map accessible by,
@@ -89,8 +172,43 @@ public class MapServer {
         "raster_ul_lat", "raster_lr_lon", "raster_lr_lat", "depth", "query_success"};
 
     private static Rasterer rasterer;
+    private static TileRenderer tileRenderer;
+    private static TilePrefetcher tilePrefetcher;
     private static GraphDB graph;
-    private static List<Long> route = new LinkedList<>();
+    private static RouteStore routes = new RouteStore(MAX_ROUTE_SESSIONS, ROUTE_TTL_MILLIS);
+    private static LruCache<String, BufferedImage> tileCache =
+            new LruCache<>(TILE_CACHE_BYTES, MapServer::imageBytes);
+    private static final ExecutorService TILE_LOADER =
+            Executors.newFixedThreadPool(TILE_LOADER_THREADS, r -> {
+                Thread t = new Thread(r, "tile-loader");
+                t.setDaemon(true);
+                return t;
+            });
+    private static LruCache<String, RenderedRaster> rasterCache =
+            new LruCache<>(RASTER_CACHE_BYTES, RenderedRaster::bytes);
+
+    /* Concurrent identical requests share one computation. */
+    private static SingleFlight<String, RenderedRaster> rasterFlight = new SingleFlight<>();
+    private static SingleFlight<String, String> searchFlight = new SingleFlight<>();
+
+    /**
+     * The image part of a /raster response: the base64 encoded PNG and its size.
+     */
+    private static class RenderedRaster {
+        private final String encodedImage;
+        private final int width;
+        private final int height;
+
+        RenderedRaster(String encodedImage, int width, int height) {
+            this.encodedImage = encodedImage;
+            this.width = width;
+            this.height = height;
+        }
+
+        long bytes() {
+            return 2L * encodedImage.length();
+        }
+    }
     /* Define any static variables here. Do not define any instance variables of MapServer. */
 
 
@@ -100,8 +218,61 @@ public class MapServer {
      * This is for testing purposes, and you may fail tests otherwise.
      **/
     public static void initialize() {
-        graph = new GraphDB(OSM_DB_PATH);
-        rasterer = new Rasterer();
+        graph = loadGraph();
+        if (new File(CH_PATH).isFile()) {
+            try {
+                graph.setContractionHierarchy(
+                        ContractionHierarchy.load(CH_PATH, graph.compactGraph()));
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+        if (new File(ALT_PATH).isFile()) {
+            try {
+                graph.setLandmarks(Landmarks.load(ALT_PATH, graph.compactGraph()));
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+        tileRenderer = new TileRenderer(graph.compactGraph(), RENDERED_IMG_ROOT);
+        tilePrefetcher = new TilePrefetcher(tileCache::containsKey, MapServer::getTile,
+                RASTER_MAX_DEPTH);
+        rasterer = new Rasterer(RASTER_MAX_DEPTH, tilePrefetcher);
+        warmTileCache();
+    }
+
+    /**
+     * Decodes the tiles of the shallow depths into the tile cache. They are few, and every
+     * zoomed out view needs them.
+     */
+    private static void warmTileCache() {
+        for (int depth = 0; depth <= TILE_WARM_DEPTH; depth++) {
+            for (int x = 0; x < 1 << depth; x++) {
+                for (int y = 0; y < 1 << depth; y++) {
+                    getTile(TileRenderer.tileName(depth, x, y));
+                }
+            }
+        }
+    }
+
+    /**
+     * Loads the graph from its binary snapshot if there is an up to date one, and falls
+     * back to parsing the OSM XML file, or its gzipped copy if there is only that, otherwise.
+     */
+    private static GraphDB loadGraph() {
+        File snapshot = new File(GRAPH_SNAPSHOT_PATH);
+        File osm = new File(OSM_DB_PATH);
+        if (snapshot.isFile() && snapshot.lastModified() >= osm.lastModified()) {
+            try {
+                return GraphSnapshot.read(GRAPH_SNAPSHOT_PATH);
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+        if (!osm.isFile() && new File(OSM_DB_PATH + ".gz").isFile()) {
+            return new GraphDB(OSM_DB_PATH + ".gz");
+        }
+        return new GraphDB(OSM_DB_PATH);
     }
 
     private static int getHerokuAssignedPort() {
@@ -129,17 +300,22 @@ public class MapServer {
         get("/raster", (req, res) -> {
             HashMap<String, Double> params =
                     getRequestParams(req, REQUIRED_RASTER_REQUEST_PARAMS);
-            /* The png image is written to the ByteArrayOutputStream */
-            ByteArrayOutputStream os = new ByteArrayOutputStream();
             /* getMapRaster() does almost all the work for this API call */
             Map<String, Object> rasteredImgParams = rasterer.getMapRaster(params);
 
             boolean rasterSuccess = validateRasteredImgParams(rasteredImgParams);
 
             if (rasterSuccess) {
-                writeImagesToOutputStream(rasteredImgParams, os);
-                String encodedImage = Base64.getEncoder().encodeToString(os.toByteArray());
-                rasteredImgParams.put("b64_encoded_image_data", encodedImage);
+                RouteStore.Route route = currentRoute(req);
+                String key = rasterCacheKey(rasteredImgParams, route.version());
+                RenderedRaster raster = rasterCache.get(key);
+                if (raster == null) {
+                    raster = rasterFlight.execute(key,
+                            () -> renderAndCache(key, rasteredImgParams, route.overlay()));
+                }
+                rasteredImgParams.put("raster_width", raster.width);
+                rasteredImgParams.put("raster_height", raster.height);
+                rasteredImgParams.put("b64_encoded_image_data", raster.encodedImage);
             }
 
             /* Encode response to Json */
@@ -147,13 +323,46 @@ public class MapServer {
             return gson.toJson(rasteredImgParams);
         });
 
+        /* Define the endpoint serving single tile images, e.g. /tiles/3/2/5.png. */
+        get("/tiles/:depth/:x/:file", MapServer::serveTile);
+
+        /* Define the endpoint returning the geometry of the current route, so that clients
+         * drawing tiles themselves can draw the route over them. */
+        get("/route_geometry", (req, res) -> {
+            RouteStore.Route route = currentRoute(req);
+            String etag = "\"r" + route.version() + "\"";
+            res.header("ETag", etag);
+            res.header("Cache-Control", "private, no-cache");
+            if (etag.equals(req.headers("If-None-Match"))) {
+                res.status(NOT_MODIFIED_RESPONSE);
+                return "";
+            }
+            RouteOverlay overlay = route.overlay();
+            int size = overlay == null ? 0 : overlay.size();
+            List<double[]> points = new ArrayList<>(size);
+            for (int i = 0; i < size; i++) {
+                points.add(new double[]{overlay.lon(i), overlay.lat(i)});
+            }
+            Map<String, Object> geometry = new HashMap<>();
+            geometry.put("version", route.version());
+            geometry.put("route", points);
+            res.type("application/json");
+            Gson gson = new Gson();
+            return gson.toJson(geometry);
+        });
+
         /* Define the routing endpoint for HTTP GET requests. */
         get("/route", (req, res) -> {
             HashMap<String, Double> params =
                     getRequestParams(req, REQUIRED_ROUTE_REQUEST_PARAMS);
-            route = Router.shortestPath(graph, params.get("start_lon"), params.get("start_lat"),
-                    params.get("end_lon"), params.get("end_lat"));
-            String directions = getDirectionsText();
+            /* An optional mode=time asks for the fastest route instead of the shortest. */
+            List<Long> route = "time".equals(req.queryParams("mode"))
+                    ? Router.fastestPath(graph, params.get("start_lon"),
+                    params.get("start_lat"), params.get("end_lon"), params.get("end_lat"))
+                    : Router.shortestPath(graph, params.get("start_lon"),
+                    params.get("start_lat"), params.get("end_lon"), params.get("end_lat"));
+            routes.put(sessionId(req), route, new RouteOverlay(graph, route));
+            String directions = getDirectionsText(route);
             Map<String, Object> routeParams = new HashMap<>();
             routeParams.put("routing_success", !route.isEmpty());
             routeParams.put("directions_success", directions.length() > 0);
@@ -164,7 +373,9 @@ public class MapServer {
 
         /* Define the API endpoint for clearing the current route. */
         get("/clear_route", (req, res) -> {
-            clearRoute();
+            if (req.session(false) != null) {
+                clearRoute(req.session().id());
+            }
             return true;
         });
 
@@ -172,16 +383,49 @@ public class MapServer {
         get("/search", (req, res) -> {
             Set<String> reqParams = req.queryParams();
             String term = req.queryParams("term");
-            Gson gson = new Gson();
-            /* Search for actual location data. */
-            if (reqParams.contains("full")) {
-                List<Map<String, Object>> data = getLocations(term);
-                return gson.toJson(data);
-            } else {
-                /* Search for prefix matching strings. */
-                List<String> matches = getLocationsByPrefix(term);
-                return gson.toJson(matches);
+            boolean full = reqParams.contains("full");
+            /* An optional limit asks for only the best prefix matches. */
+            int limit = -1;
+            if (reqParams.contains("limit")) {
+                try {
+                    limit = Integer.parseInt(req.queryParams("limit"));
+                } catch (NumberFormatException e) {
+                    limit = 0;
+                }
+                if (limit <= 0) {
+                    halt(HALT_RESPONSE, "Incorrect parameters - limit must be positive.");
+                }
             }
+            int maxMatches = limit;
+            String key = full ? "full:" + term : "prefix:" + maxMatches + ":" + term;
+            /* Identical searches in flight at the same time share one lookup. */
+            return searchFlight.execute(key, () -> {
+                Gson gson = new Gson();
+                /* Search for actual location data. */
+                if (full) {
+                    List<Map<String, Object>> data = getLocations(term);
+                    return gson.toJson(data);
+                } else if (maxMatches > 0) {
+                    /* Search for the best prefix matching strings. */
+                    return gson.toJson(getLocationsByPrefix(term, maxMatches));
+                } else {
+                    /* Search for prefix matching strings. */
+                    List<String> matches = getLocationsByPrefix(term);
+                    return gson.toJson(matches);
+                }
+            });
+        });
+
+        /* Define the API endpoint for server statistics, such as cache hit rates. */
+        get("/stats", (req, res) -> {
+            Map<String, Object> stats = new HashMap<>();
+            stats.put("tile_cache", tileCache.stats());
+            stats.put("raster_cache", rasterCache.stats());
+            stats.put("tile_prefetch", tilePrefetcher.stats());
+            stats.put("raster_single_flight", rasterFlight.stats());
+            stats.put("search_single_flight", searchFlight.stats());
+            Gson gson = new Gson();
+            return gson.toJson(stats);
         });
 
         /* Define map application redirect */
@@ -219,15 +463,144 @@ public class MapServer {
     }
 
     /**
-     * Writes the images corresponding to rasteredImgParams to the output stream.
+     * Returns the id of the session of a request, starting one if needed. Each session has
+     * its own route, so clients do not draw or clear each other's routes. Jetty keeps
+     * sessions forever by default, so a new session expires after ROUTE_TTL_MILLIS idle,
+     * the same as its route.
+     */
+    private static String sessionId(spark.Request req) {
+        spark.Session session = req.session(true);
+        if (session.isNew()) {
+            session.maxInactiveInterval((int) (ROUTE_TTL_MILLIS / 1000));
+        }
+        return session.id();
+    }
+
+    /**
+     * Returns the route of the session of a request. Requests without a session have no
+     * route, and do not start a session.
+     */
+    private static RouteStore.Route currentRoute(spark.Request req) {
+        spark.Session session = req.session(false);
+        return session == null ? RouteStore.Route.EMPTY : routes.get(session.id());
+    }
+
+    /**
+     * Sends the file of the tile at /tiles/depth/x/y.png as it is on disk, copied from the
+     * file channel to the response without decoding or buffering it in the heap. Responds
+     * with ETag, Last-Modified and Cache-Control headers, and with 304 Not Modified when
+     * the client already has the current file.
+     */
+    private static Object serveTile(spark.Request req, spark.Response res) throws IOException {
+        String file = req.params(":file");
+        if (!file.endsWith(".png")) {
+            halt(NOT_FOUND_RESPONSE, "No such tile.");
+        }
+        int depth = 0, x = 0, y = 0;
+        try {
+            depth = Integer.parseInt(req.params(":depth"));
+            x = Integer.parseInt(req.params(":x"));
+            y = Integer.parseInt(file.substring(0, file.length() - ".png".length()));
+        } catch (NumberFormatException e) {
+            halt(NOT_FOUND_RESPONSE, "No such tile.");
+        }
+        if (!TileRenderer.isTile(depth, x, y) || depth > RASTER_MAX_DEPTH) {
+            halt(NOT_FOUND_RESPONSE, "No such tile.");
+        }
+        File tile = new File(IMG_ROOT + TileRenderer.tileName(depth, x, y));
+        if (!tile.isFile()) {
+            tile = tileRenderer.file(depth, x, y);
+        }
+
+        long length = tile.length();
+        long lastModified = tile.lastModified() / 1000 * 1000; // HTTP dates are in seconds
+        String etag = "\"" + Long.toHexString(lastModified) + "-" + Long.toHexString(length)
+                + "\"";
+        res.header("ETag", etag);
+        res.raw().setDateHeader("Last-Modified", lastModified);
+        res.header("Cache-Control", TILE_CACHE_CONTROL);
+        String ifNoneMatch = req.headers("If-None-Match");
+        boolean fresh = ifNoneMatch != null
+                ? ifNoneMatch.equals(etag)
+                : req.raw().getDateHeader("If-Modified-Since") >= lastModified;
+        if (fresh) {
+            res.status(NOT_MODIFIED_RESPONSE);
+            return "";
+        }
+
+        res.type("image/png");
+        res.raw().setContentLengthLong(length);
+        try (FileChannel in = FileChannel.open(tile.toPath(), StandardOpenOption.READ)) {
+            WritableByteChannel out = Channels.newChannel(res.raw().getOutputStream());
+            for (long pos = 0; pos < length; ) {
+                pos += in.transferTo(pos, length - pos, out);
+            }
+        }
+        return "";
+    }
+
+    /**
+     * Returns the key of a raster in the raster cache. The raster image only depends on the
+     * depth and the corner tiles of the render grid, which the names of the corner tiles
+     * encode, and on the route drawn over it. Route versions are unique across sessions,
+     * and all sessions without a route share version 0.
+     */
+    private static String rasterCacheKey(Map<String, Object> rasteredImageParams,
+                                         long routeVersion) {
+        String[][] renderGrid = (String[][]) rasteredImageParams.get("render_grid");
+        String[] lastRow = renderGrid[renderGrid.length - 1];
+        return renderGrid[0][0] + ":" + lastRow[lastRow.length - 1] + ":" + routeVersion;
+    }
+
+    /**
+     * Renders and encodes the raster of rasteredImageParams with the given route, and adds
+     * it to the raster cache under key.
+     */
+    private static RenderedRaster renderAndCache(String key,
+                                                 Map<String, Object> rasteredImageParams,
+                                                 RouteOverlay route) {
+        /* The png image is written to the ByteArrayOutputStream */
+        ByteArrayOutputStream os = new ByteArrayOutputStream();
+        writeImagesToOutputStream(rasteredImageParams, route, os);
+        RenderedRaster raster = new RenderedRaster(
+                Base64.getEncoder().encodeToString(os.toByteArray()),
+                (int) rasteredImageParams.get("raster_width"),
+                (int) rasteredImageParams.get("raster_height"));
+        rasterCache.put(key, raster);
+        return raster;
+    }
+
+    /**
+     * Writes the images corresponding to rasteredImgParams, and the given route over them,
+     * to the output stream.
      * In Spring 2016, students had to do this on their own, but in 2017,
      * we have made this into provided code since it was just a bit too low level.
      */
     private static void writeImagesToOutputStream(Map<String, Object> rasteredImageParams,
+                                                  RouteOverlay route,
                                                   ByteArrayOutputStream os) {
+        BufferedImage img = renderRaster(rasteredImageParams, route);
+        rasteredImageParams.put("raster_width", img.getWidth());
+        rasteredImageParams.put("raster_height", img.getHeight());
+
+        try {
+            writePng(img, os, PNG_COMPRESSION_QUALITY);
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+
+    }
+
+    /**
+     * Composes the tiles of rasteredImageParams into one image, and draws the route over
+     * it, if there is one. The tiles are loaded in parallel.
+     */
+    static BufferedImage renderRaster(Map<String, Object> rasteredImageParams,
+                                      RouteOverlay route) {
         String[][] renderGrid = (String[][]) rasteredImageParams.get("render_grid");
         int numVertTiles = renderGrid.length;
         int numHorizTiles = renderGrid[0].length;
+        BufferedImage[][] tiles = loadTiles(renderGrid);
 
         BufferedImage img = new BufferedImage(numHorizTiles * MapServer.TILE_SIZE,
                 numVertTiles * MapServer.TILE_SIZE, BufferedImage.TYPE_INT_RGB);
@@ -236,7 +609,7 @@ public class MapServer {
 
         for (int r = 0; r < numVertTiles; r += 1) {
             for (int c = 0; c < numHorizTiles; c += 1) {
-                graphic.drawImage(getImage(IMG_ROOT + renderGrid[r][c]), x, y, null);
+                graphic.drawImage(tiles[r][c], x, y, null);
                 x += MapServer.TILE_SIZE;
                 if (x >= img.getWidth()) {
                     x = 0;
@@ -248,55 +621,122 @@ public class MapServer {
         /* If there is a route, draw it. */
         double ullon = (double) rasteredImageParams.get("raster_ul_lon"); //tiles.get(0).ulp;
         double ullat = (double) rasteredImageParams.get("raster_ul_lat"); //tiles.get(0).ulp;
-        double lrlon = (double) rasteredImageParams.get("raster_lr_lon"); //tiles.get(0).ulp;
-        double lrlat = (double) rasteredImageParams.get("raster_lr_lat"); //tiles.get(0).ulp;
-
-        final double wdpp = (lrlon - ullon) / img.getWidth();
-        final double hdpp = (ullat - lrlat) / img.getHeight();
-        if (route != null && !route.isEmpty()) {
+        int depth = (int) rasteredImageParams.get("depth");
+        if (route != null) {
             Graphics2D g2d = (Graphics2D) graphic;
             g2d.setColor(MapServer.ROUTE_STROKE_COLOR);
             g2d.setStroke(new BasicStroke(MapServer.ROUTE_STROKE_WIDTH_PX,
                     BasicStroke.CAP_ROUND, BasicStroke.JOIN_ROUND));
-            route.stream().reduce((v, w) -> {
-                g2d.drawLine((int) ((graph.lon(v) - ullon) * (1 / wdpp)),
-                        (int) ((ullat - graph.lat(v)) * (1 / hdpp)),
-                        (int) ((graph.lon(w) - ullon) * (1 / wdpp)),
-                        (int) ((ullat - graph.lat(w)) * (1 / hdpp)));
-                return w;
-            });
+            route.draw(g2d, depth, RouteOverlay.pixelX(ullon, depth),
+                    RouteOverlay.pixelY(ullat, depth), img.getWidth(), img.getHeight(),
+                    MapServer.ROUTE_STROKE_WIDTH_PX);
         }
+        graphic.dispose();
+        return img;
+    }
 
-        rasteredImageParams.put("raster_width", img.getWidth());
-        rasteredImageParams.put("raster_height", img.getHeight());
+    /**
+     * Loads the tiles of a render grid on the tile loader pool, and waits for all of them.
+     * A tile that cannot be loaded is null, which drawImage skips.
+     */
+    private static BufferedImage[][] loadTiles(String[][] renderGrid) {
+        BufferedImage[][] tiles = new BufferedImage[renderGrid.length][renderGrid[0].length];
+        if (renderGrid.length * renderGrid[0].length == 1) {
+            tiles[0][0] = getTile(renderGrid[0][0]);
+            return tiles;
+        }
+        List<List<Future<BufferedImage>>> futures = new ArrayList<>();
+        for (String[] row : renderGrid) {
+            List<Future<BufferedImage>> rowFutures = new ArrayList<>();
+            for (String tile : row) {
+                rowFutures.add(TILE_LOADER.submit(() -> getTile(tile)));
+            }
+            futures.add(rowFutures);
+        }
+        for (int r = 0; r < tiles.length; r++) {
+            for (int c = 0; c < tiles[r].length; c++) {
+                try {
+                    tiles[r][c] = futures.get(r).get(c).get();
+                } catch (ExecutionException e) {
+                    e.printStackTrace();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return tiles;
+                }
+            }
+        }
+        return tiles;
+    }
 
-        try {
-            ImageIO.write(img, "png", os);
-        } catch (IOException e) {
-            e.printStackTrace();
+    /**
+     * Encodes an image as PNG. If the PNG writer supports it, the compression is set
+     * explicitly: a quality of 1 compresses least and fastest, 0 most and slowest.
+     */
+    static void writePng(BufferedImage img, OutputStream os, float quality) throws IOException {
+        ImageWriter writer = ImageIO.getImageWritersByFormatName("png").next();
+        ImageWriteParam param = writer.getDefaultWriteParam();
+        if (param.canWriteCompressed()) {
+            param.setCompressionMode(ImageWriteParam.MODE_EXPLICIT);
+            param.setCompressionQuality(quality);
         }
+        try (ImageOutputStream out = ImageIO.createImageOutputStream(os)) {
+            writer.setOutput(out);
+            writer.write(null, new IIOImage(img, null, null), param);
+        } finally {
+            writer.dispose();
+        }
+    }
 
+    /**
+     * Empties the tile cache, e.g. to time loading tiles from disk.
+     */
+    static void clearTileCache() {
+        tileCache.clear();
     }
 
-    private static BufferedImage getImage(String imgPath) {
-        BufferedImage tileImg = null;
+    /**
+     * Returns the decoded image of the tile with the given file name, from the tile cache if
+     * possible. Tiles that are not prerendered in IMG_ROOT are drawn by the tile renderer.
+     */
+    private static BufferedImage getTile(String name) {
+        BufferedImage tileImg = tileCache.get(name);
         if (tileImg == null) {
-            try {
-                File in = new File(imgPath);
-                tileImg = ImageIO.read(in);
+            String imgPath = IMG_ROOT + name;
+            File in = new File(imgPath);
+            if (in.isFile()) {
+                try {
+                    tileImg = ImageIO.read(in);
 //                tileImg = ImageIO.read(Thread.currentThread().getContextClassLoader().getResource(imgPath));
-            } catch (IOException | NullPointerException e) {
-                e.printStackTrace();
+                } catch (IOException | NullPointerException e) {
+                    e.printStackTrace();
+                }
+            } else {
+                int[] tile = TileRenderer.parseTileName(name);
+                if (tile != null && TileRenderer.isTile(tile[0], tile[1], tile[2])) {
+                    tileImg = tileRenderer.load(tile[0], tile[1], tile[2]);
+                }
+            }
+            if (tileImg != null) {
+                tileCache.put(name, tileImg);
             }
         }
         return tileImg;
     }
 
     /**
-     * Clear the current found route, if it exists.
+     * Returns the size of the pixel data of an image in bytes.
      */
-    public static void clearRoute() {
-        route = new LinkedList<Long>();
+    private static long imageBytes(BufferedImage img) {
+        DataBuffer data = img.getRaster().getDataBuffer();
+        return (long) data.getSize() * data.getNumBanks()
+                * DataBuffer.getDataTypeSize(data.getDataType()) / 8;
+    }
+
+    /**
+     * Clear the current found route of a session, if it exists.
+     */
+    public static void clearRoute(String session) {
+        routes.clear(session);
     }
 
     /**
@@ -311,6 +751,22 @@ public class MapServer {
         return graph.getLocationsByPrefix(prefix);
     }
 
+    /**
+     * Collect at most limit distinct names of OSM locations that prefix-match the query
+     * string, ranked by the number of locations with each name. Its cost depends on limit,
+     * not on the number of names that match. If too few names match, names that match the
+     * query string with a typo or two follow.
+     *
+     * @param prefix Prefix string to be searched for. Could be any case, with our without
+     *               punctuation.
+     * @param limit  The maximum number of names to return.
+     * @return A <code>List</code> of the full names of locations whose cleaned name matches the
+     * cleaned <code>prefix</code>, from the most to the least common.
+     */
+    public static List<String> getLocationsByPrefix(String prefix, int limit) {
+        return graph.getLocationsByPrefix(prefix, limit);
+    }
+
     /**
      * Collect all locations that match a cleaned <code>locationName</code>, and return
      * information about each node that matches.
@@ -351,10 +807,10 @@ public class MapServer {
     }
 
     /**
-     * Takes the route of this MapServer and converts it into an HTML friendly
+     * Takes a route and converts its directions into an HTML friendly
      * String to be passed to the frontend.
      */
-    private static String getDirectionsText() {
+    private static String getDirectionsText(List<Long> route) {
         List<Router.NavigationDirection> directions = Router.routeDirections(graph, route);
         if (directions == null || directions.isEmpty()) {
             return "";
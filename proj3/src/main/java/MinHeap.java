@@ -0,0 +1,65 @@
+import java.util.Arrays;
+
+/**
+ * Binary min-heap of int values keyed by doubles, used by the graph searches that work
+ * on dense vertex indices. Decreasing a key is done by pushing the value again; callers
+ * skip the stale entries when they pop them.
+ */
+public class MinHeap {
+    private double[] keys = new double[64];
+    private int[] values = new int[64];
+    private int size = 0;
+
+    boolean isEmpty() {
+        return size == 0;
+    }
+
+    void clear() {
+        size = 0;
+    }
+
+    double topKey() {
+        return keys[0];
+    }
+
+    void push(double key, int value) {
+        if (size == keys.length) {
+            keys = Arrays.copyOf(keys, 2 * size);
+            values = Arrays.copyOf(values, 2 * size);
+        }
+        int i = size++;
+        while (i > 0 && keys[(i - 1) / 2] > key) {
+            keys[i] = keys[(i - 1) / 2];
+            values[i] = values[(i - 1) / 2];
+            i = (i - 1) / 2;
+        }
+        keys[i] = key;
+        values[i] = value;
+    }
+
+    /**
+     * Removes the entry with the smallest key and returns its value.
+     */
+    int pop() {
+        int top = values[0];
+        size -= 1;
+        double key = keys[size];
+        int value = values[size];
+        int i = 0;
+        while (2 * i + 1 < size) {
+            int child = 2 * i + 1;
+            if (child + 1 < size && keys[child + 1] < keys[child]) {
+                child += 1;
+            }
+            if (keys[child] >= key) {
+                break;
+            }
+            keys[i] = keys[child];
+            values[i] = values[child];
+            i = child;
+        }
+        keys[i] = key;
+        values[i] = value;
+        return top;
+    }
+}
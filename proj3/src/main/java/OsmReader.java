@@ -0,0 +1,234 @@
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.zip.GZIPInputStream;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+
+/**
+ * Reads an OSM XML file, plain or gzipped, into a GraphBuildingHandler. The XML is parsed
+ * with a streaming (StAX) parser on a thread of its own, which also parses the ids and
+ * coordinates, and hands the elements over in batches through a small bounded queue; the
+ * calling thread builds the graph from them. Parsing is usually the slower half, so the
+ * graph is built while the next batches are being parsed, and memory stays bounded
+ * however big the file is.
+ */
+public class OsmReader {
+    private static final int BUFFER_SIZE = 1 << 20;
+    private static final int BATCH_SIZE = 4096;
+    private static final int QUEUE_CAPACITY = 16;
+
+    // The kinds of elements in a batch.
+    private static final byte NODE = 0;
+    private static final byte WAY = 1;
+    private static final byte ND = 2;
+    private static final byte TAG = 3;
+    private static final byte END_WAY = 4;
+    private static final byte OTHER = 5;
+
+    private final String path;
+    private long elements = 0;
+    private long nanos = 0;
+
+    /**
+     * A run of elements in document order, stored column by column. Which columns are set
+     * depends on the kind of the element: a node has an id, lon and lat, a way node has an
+     * id, and a tag has a key and value.
+     */
+    private static class Batch {
+        final byte[] kinds = new byte[BATCH_SIZE];
+        final long[] ids = new long[BATCH_SIZE];
+        final double[] lons = new double[BATCH_SIZE];
+        final double[] lats = new double[BATCH_SIZE];
+        final String[] keys = new String[BATCH_SIZE];
+        final String[] values = new String[BATCH_SIZE];
+        int size = 0;
+        // The number of start tags, i.e. the elements without the ends of ways.
+        int starts = 0;
+        // Set on the last batch of the file.
+        boolean last = false;
+        Exception error = null;
+
+        boolean isFull() {
+            return size == BATCH_SIZE;
+        }
+    }
+
+    /**
+     * Creates a reader of the OSM file at path. Whether it is gzipped is told from its
+     * first bytes, not its name.
+     */
+    public OsmReader(String path) {
+        this.path = path;
+    }
+
+    /**
+     * Reads the whole file into handler, on the calling thread.
+     *
+     * @throws IOException If the file cannot be read or is not well formed XML.
+     */
+    public void read(GraphBuildingHandler handler) throws IOException {
+        long start = System.nanoTime();
+        BlockingQueue<Batch> queue = new ArrayBlockingQueue<>(QUEUE_CAPACITY);
+        Thread parser = new Thread(() -> parse(queue), "osm-parser");
+        parser.setDaemon(true);
+        parser.start();
+        try {
+            while (true) {
+                Batch batch = queue.take();
+                if (batch.error != null) {
+                    throw batch.error instanceof IOException ? (IOException) batch.error
+                            : new IOException("Could not parse " + path, batch.error);
+                }
+                apply(batch, handler);
+                elements += batch.starts;
+                if (batch.last) {
+                    break;
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while reading " + path);
+        } finally {
+            // Stops the parser if the handler failed; it is done otherwise.
+            parser.interrupt();
+            nanos = System.nanoTime() - start;
+        }
+    }
+
+    /**
+     * Returns the number of elements read so far.
+     */
+    public long elements() {
+        return elements;
+    }
+
+    /**
+     * Returns the throughput of the last read, in elements per second.
+     */
+    public double elementsPerSecond() {
+        return nanos == 0 ? 0 : elements * 1e9 / nanos;
+    }
+
+    /**
+     * Opens the file at path, decompressing it if it starts with the gzip magic number.
+     */
+    static InputStream open(String path) throws IOException {
+        FileChannel channel = FileChannel.open(Paths.get(path), StandardOpenOption.READ);
+        InputStream in = new BufferedInputStream(Channels.newInputStream(channel), BUFFER_SIZE);
+        in.mark(2);
+        int magic = in.read() | in.read() << 8;
+        in.reset();
+        if (magic == GZIPInputStream.GZIP_MAGIC) {
+            return new BufferedInputStream(new GZIPInputStream(in, BUFFER_SIZE), BUFFER_SIZE);
+        }
+        return in;
+    }
+
+    /**
+     * Parses the file into batches, ending with a last batch or one with an error.
+     */
+    private void parse(BlockingQueue<Batch> queue) {
+        Batch batch = new Batch();
+        try (InputStream in = open(path)) {
+            XMLInputFactory factory = XMLInputFactory.newInstance();
+            factory.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+            factory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+            XMLStreamReader xml = factory.createXMLStreamReader(in);
+            try {
+                while (xml.hasNext()) {
+                    int event = xml.next();
+                    if (event == XMLStreamConstants.START_ELEMENT) {
+                        addStart(batch, xml);
+                    } else if (event == XMLStreamConstants.END_ELEMENT
+                            && xml.getLocalName().equals("way")) {
+                        batch.kinds[batch.size] = END_WAY;
+                        batch.size += 1;
+                    } else {
+                        continue;
+                    }
+                    if (batch.isFull()) {
+                        queue.put(batch);
+                        batch = new Batch();
+                    }
+                }
+            } finally {
+                xml.close();
+            }
+            batch.last = true;
+        } catch (IOException | XMLStreamException | RuntimeException e) {
+            batch.error = e;
+        } catch (InterruptedException e) {
+            // The reader gave up.
+            return;
+        }
+        try {
+            queue.put(batch);
+        } catch (InterruptedException e) {
+            // The reader gave up.
+        }
+    }
+
+    private static void addStart(Batch batch, XMLStreamReader xml) {
+        int i = batch.size;
+        switch (xml.getLocalName()) {
+            case "node":
+                batch.kinds[i] = NODE;
+                batch.ids[i] = Long.parseLong(xml.getAttributeValue(null, "id"));
+                batch.lons[i] = Double.parseDouble(xml.getAttributeValue(null, "lon"));
+                batch.lats[i] = Double.parseDouble(xml.getAttributeValue(null, "lat"));
+                break;
+            case "way":
+                batch.kinds[i] = WAY;
+                break;
+            case "nd":
+                batch.kinds[i] = ND;
+                batch.ids[i] = Long.parseLong(xml.getAttributeValue(null, "ref"));
+                break;
+            case "tag":
+                batch.kinds[i] = TAG;
+                batch.keys[i] = xml.getAttributeValue(null, "k");
+                batch.values[i] = xml.getAttributeValue(null, "v");
+                break;
+            default:
+                batch.kinds[i] = OTHER;
+                break;
+        }
+        batch.size += 1;
+        batch.starts += 1;
+    }
+
+    private static void apply(Batch batch, GraphBuildingHandler handler) {
+        for (int i = 0; i < batch.size; i++) {
+            switch (batch.kinds[i]) {
+                case NODE:
+                    handler.node(batch.ids[i], batch.lons[i], batch.lats[i]);
+                    break;
+                case WAY:
+                    handler.way();
+                    break;
+                case ND:
+                    handler.wayNode(batch.ids[i]);
+                    break;
+                case TAG:
+                    handler.tag(batch.keys[i], batch.values[i]);
+                    break;
+                case END_WAY:
+                    handler.endWay();
+                    break;
+                default:
+                    handler.other();
+                    break;
+            }
+        }
+    }
+}
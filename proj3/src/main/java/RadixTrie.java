@@ -0,0 +1,545 @@
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+
+/**
+ * A read-only, path-compressed trie with "cleaned string"s as keys (see GraphDB.cleanString)
+ * and the raw strings of each key as values, like Trie. It is built once by a Builder, and
+ * then stored in a few flat arrays instead of one object per character:
+ * <ul>
+ *     <li>A node with a single child and no words of its own is merged into that child, so
+ *     every edge is labelled with a run of characters rather than one.</li>
+ *     <li>Nodes are numbered in depth-first order with children sorted by their first
+ *     character, so the children of a node are found by binary search over a char array,
+ *     and the words under a node are one contiguous, sorted range of the word array.</li>
+ * </ul>
+ * Listing the words with a prefix therefore walks the prefix once and copies a range.
+ * <p>
+ * A key's score is its number of words, i.e. the number of locations with that cleaned
+ * name. Each node also records the highest score in its subtree, so that the best k keys
+ * with a prefix are found without visiting the subtrees that cannot hold them.
+ * <p>
+ * GraphSnapshot stores the arrays, so that a loaded trie does not need to be built again.
+ */
+public class RadixTrie {
+    // Edge labels: node v is reached from its parent through labels[labelStart[v]] up to
+    // labels[labelStart[v + 1]]. The root has an empty label.
+    private final char[] labels;
+    private final int[] labelStart;
+    // The children of v are children[childStart[v]] up to children[childStart[v + 1]], and
+    // childChar holds the first character of each of their labels, in increasing order.
+    private final int[] childStart;
+    private final int[] children;
+    private final char[] childChar;
+    // The words of v are words[wordStart[v]] up to words[wordStart[v + 1]]. The subtree of
+    // v is the nodes v up to subtreeEnd[v], and so its words end at wordStart[subtreeEnd[v]].
+    private final String[] words;
+    private final int[] wordStart;
+    private final int[] subtreeEnd;
+    // The highest score of the keys in the subtree of v.
+    private final int[] maxScore;
+
+    private RadixTrie(char[] labels, int[] labelStart, int[] childStart, int[] children,
+                      char[] childChar, String[] words, int[] wordStart, int[] subtreeEnd,
+                      int[] maxScore) {
+        this.labels = labels;
+        this.labelStart = labelStart;
+        this.childStart = childStart;
+        this.children = children;
+        this.childChar = childChar;
+        this.words = words;
+        this.wordStart = wordStart;
+        this.subtreeEnd = subtreeEnd;
+        this.maxScore = maxScore;
+    }
+
+    /**
+     * Collects the keys and words of a RadixTrie.
+     */
+    public static class Builder {
+        // Keeps the words of each key in the order they were added.
+        private final Map<String, List<String>> wordsByKey = new HashMap<>();
+        private int totalWords = 0;
+
+        // The arrays being filled by build(), and how much of each is used.
+        private String[] keys;
+        private char[] labels;
+        private int[] labelStart;
+        private int[] childStart;
+        private int[] children;
+        private char[] childChar;
+        private String[] words;
+        private int[] wordStart;
+        private int[] subtreeEnd;
+        private int[] maxScore;
+        private int numNodes;
+        private int numLabelChars;
+        private int numChildren;
+        private int numWords;
+
+        /**
+         * Adds the word into "key"'s list.
+         *
+         * @param key  Cleaned version of raw string
+         * @param word raw string
+         */
+        public Builder addWord(String key, String word) {
+            if (key == null) {
+                throw new IllegalArgumentException("Key cannot be null!");
+            }
+            wordsByKey.computeIfAbsent(key, k -> new ArrayList<>(1)).add(word);
+            totalWords += 1;
+            return this;
+        }
+
+        /**
+         * Returns the trie of the words added so far.
+         */
+        public RadixTrie build() {
+            keys = wordsByKey.keySet().toArray(new String[0]);
+            Arrays.sort(keys);
+            // Every key adds at most one leaf and one branching node.
+            int maxNodes = 2 * keys.length + 1;
+            int maxLabelChars = 0;
+            for (String key : keys) {
+                maxLabelChars += key.length();
+            }
+            labels = new char[maxLabelChars];
+            labelStart = new int[maxNodes + 1];
+            childStart = new int[maxNodes + 1];
+            children = new int[maxNodes];
+            childChar = new char[maxNodes];
+            words = new String[totalWords];
+            wordStart = new int[maxNodes + 1];
+            subtreeEnd = new int[maxNodes];
+            maxScore = new int[maxNodes];
+            numNodes = 0;
+            numLabelChars = 0;
+            numChildren = 0;
+            numWords = 0;
+
+            addNode(0, 0, keys.length);
+            labelStart[numNodes] = numLabelChars;
+            childStart[numNodes] = numChildren;
+            wordStart[numNodes] = numWords;
+            RadixTrie trie = new RadixTrie(Arrays.copyOf(labels, numLabelChars),
+                    Arrays.copyOf(labelStart, numNodes + 1),
+                    Arrays.copyOf(childStart, numNodes + 1),
+                    Arrays.copyOf(children, numChildren), Arrays.copyOf(childChar, numChildren),
+                    words, Arrays.copyOf(wordStart, numNodes + 1),
+                    Arrays.copyOf(subtreeEnd, numNodes), Arrays.copyOf(maxScore, numNodes));
+            keys = null;
+            labels = null;
+            labelStart = null;
+            childStart = null;
+            children = null;
+            childChar = null;
+            words = null;
+            wordStart = null;
+            subtreeEnd = null;
+            maxScore = null;
+            return trie;
+        }
+
+        /**
+         * Adds the node for keys[lo] up to keys[hi], which all start with the same depth
+         * characters, and its subtree. Its label has already been written. Returns the node.
+         */
+        private int addNode(int depth, int lo, int hi) {
+            int v = numNodes;
+            numNodes += 1;
+            wordStart[v] = numWords;
+            // Sorted keys put the key equal to the shared prefix, if any, first.
+            if (lo < hi && keys[lo].length() == depth) {
+                for (String word : wordsByKey.get(keys[lo])) {
+                    words[numWords] = word;
+                    numWords += 1;
+                }
+                lo += 1;
+            }
+
+            // Reserve the child slots now, so that childStart increases in node order.
+            int best = numWords - wordStart[v];
+            int slot = numChildren;
+            childStart[v] = slot;
+            for (int i = lo; i < hi; i = groupEnd(depth, i, hi)) {
+                numChildren += 1;
+            }
+            for (int i = lo; i < hi; ) {
+                int end = groupEnd(depth, i, hi);
+                int childDepth = commonPrefixLength(keys[i], keys[end - 1]);
+                labelStart[numNodes] = numLabelChars;
+                keys[i].getChars(depth, childDepth, labels, numLabelChars);
+                numLabelChars += childDepth - depth;
+                childChar[slot] = keys[i].charAt(depth);
+                int child = addNode(childDepth, i, end);
+                children[slot] = child;
+                best = Math.max(best, maxScore[child]);
+                slot += 1;
+                i = end;
+            }
+            subtreeEnd[v] = numNodes;
+            maxScore[v] = best;
+            return v;
+        }
+
+        /**
+         * Returns the end of the run of keys from keys[i] with the same character at depth.
+         */
+        private int groupEnd(int depth, int i, int hi) {
+            char c = keys[i].charAt(depth);
+            int end = i + 1;
+            while (end < hi && keys[end].charAt(depth) == c) {
+                end += 1;
+            }
+            return end;
+        }
+
+        private static int commonPrefixLength(String a, String b) {
+            int n = Math.min(a.length(), b.length());
+            int i = 0;
+            while (i < n && a.charAt(i) == b.charAt(i)) {
+                i += 1;
+            }
+            return i;
+        }
+    }
+
+    /**
+     * Returns words with the prefix "key", sorted by their cleaned version, and in the order
+     * they were added for the same cleaned version.
+     *
+     * @param key The "cleaned version" of a word.
+     * @return List of words, where their "cleaned version" has prefix "key".
+     */
+    public List<String> wordsWithPrefix(String key) {
+        int v = find(key);
+        if (v < 0) {
+            return new ArrayList<>();
+        }
+        int from = wordStart[v];
+        int to = wordStart[subtreeEnd[v]];
+        return new ArrayList<>(Arrays.asList(words).subList(from, to));
+    }
+
+    /**
+     * Returns at most limit distinct words with the prefix "key", from the keys with the
+     * highest scores first, breaking ties by key. The subtrees are visited best first by
+     * their highest score, so the search stops as soon as limit words are found, however
+     * many words share the prefix.
+     *
+     * @param key   The "cleaned version" of a word.
+     * @param limit The maximum number of words to return.
+     * @return List of words, where their "cleaned version" has prefix "key".
+     */
+    public List<String> topWordsWithPrefix(String key, int limit) {
+        List<String> result = new ArrayList<>();
+        int v = find(key);
+        if (v >= 0) {
+            addTopWords(new int[]{v}, 1, limit, result, new HashSet<>());
+        }
+        return result;
+    }
+
+    /**
+     * Returns at most limit distinct words whose "cleaned version" starts with a string
+     * within maxEdits insertions, deletions or substitutions of "key": first the words
+     * that match the prefix exactly, from the keys with the highest scores, then those one
+     * edit away, and so on.
+     * <p>
+     * The trie is walked depth first with one row of the edit distance table per
+     * character, so subtrees that are too far from key are cut off without being visited.
+     * The walk stops at the deadline, and then returns the words found so far.
+     *
+     * @param key           The "cleaned version" of a word, possibly mistyped.
+     * @param maxEdits      The maximum number of edits, usually 1 or 2.
+     * @param limit         The maximum number of words to return.
+     * @param deadlineNanos The System.nanoTime() at which to give up searching.
+     * @return List of words, from the closest and highest scoring to the farthest.
+     */
+    public List<String> fuzzyWordsWithPrefix(String key, int maxEdits, int limit,
+                                             long deadlineNanos) {
+        FuzzySearch search = new FuzzySearch(key, maxEdits, deadlineNanos);
+        int[] row = new int[key.length() + 1];
+        for (int j = 0; j <= key.length(); j++) {
+            row[j] = j;
+        }
+        if (key.length() <= maxEdits) {
+            // Deleting all of key matches every key, including the empty one at the root.
+            search.add(key.length(), 0);
+        }
+        search.visit(0, row, Math.min(key.length(), maxEdits + 1));
+
+        List<String> result = new ArrayList<>();
+        Set<String> seen = new HashSet<>();
+        for (int edits = 0; edits <= maxEdits && result.size() < limit; edits++) {
+            addTopWords(search.roots[edits], search.numRoots[edits], limit, result, seen);
+        }
+        return result;
+    }
+
+    /**
+     * Collects the subtrees whose keys all start with a string within maxEdits of key, by
+     * the number of edits, keeping only the highest such subtree for each number.
+     */
+    private class FuzzySearch {
+        // Nodes visited between two looks at the clock.
+        private static final int CLOCK_INTERVAL = 64;
+
+        private final String key;
+        private final long deadlineNanos;
+        private final int[][] roots;
+        private final int[] numRoots;
+        private int visited = 0;
+        private boolean timedOut = false;
+
+        FuzzySearch(String key, int maxEdits, long deadlineNanos) {
+            this.key = key;
+            this.deadlineNanos = deadlineNanos;
+            this.roots = new int[maxEdits + 1][4];
+            this.numRoots = new int[maxEdits + 1];
+        }
+
+        /**
+         * Visits the children of v, given the row of edit distances between the prefixes
+         * of key and the path to v, where found is the fewest edits matched at or above v.
+         */
+        void visit(int v, int[] row, int found) {
+            int m = key.length();
+            visited += 1;
+            if (visited % CLOCK_INTERVAL == 0 && System.nanoTime() > deadlineNanos) {
+                timedOut = true;
+            }
+            for (int i = childStart[v]; i < childStart[v + 1] && !timedOut; i++) {
+                int child = children[i];
+                int[] childRow = row;
+                int edits = found;
+                int best = 0;
+                for (int l = labelStart[child]; l < labelStart[child + 1]; l++) {
+                    childRow = nextRow(childRow, labels[l]);
+                    // Every key under child starts with this path, so matches it too.
+                    edits = Math.min(edits, childRow[m]);
+                    best = min(childRow);
+                    // A closer match needs a row with fewer edits than found somewhere.
+                    if (best >= edits) {
+                        break;
+                    }
+                }
+                if (edits < found) {
+                    add(edits, child);
+                }
+                if (best < edits) {
+                    visit(child, childRow, edits);
+                }
+            }
+        }
+
+        private int[] nextRow(int[] row, char c) {
+            int[] next = new int[row.length];
+            next[0] = row[0] + 1;
+            for (int j = 1; j < row.length; j++) {
+                int substitute = row[j - 1] + (key.charAt(j - 1) == c ? 0 : 1);
+                next[j] = Math.min(substitute, Math.min(row[j], next[j - 1]) + 1);
+            }
+            return next;
+        }
+
+        private int min(int[] row) {
+            int min = row[0];
+            for (int d : row) {
+                min = Math.min(min, d);
+            }
+            return min;
+        }
+
+        private void add(int edits, int v) {
+            if (numRoots[edits] == roots[edits].length) {
+                roots[edits] = Arrays.copyOf(roots[edits], 2 * numRoots[edits]);
+            }
+            roots[edits][numRoots[edits]] = v;
+            numRoots[edits] += 1;
+        }
+    }
+
+    /**
+     * Adds the distinct words of the subtrees of roots[0] up to roots[numRoots] that are not
+     * in seen yet, until result holds limit words, from the keys with the highest scores
+     * first, breaking ties by key. The subtrees are visited best first by their highest
+     * score, so the search stops as soon as limit words are found.
+     */
+    private void addTopWords(int[] roots, int numRoots, int limit, List<String> result,
+                             Set<String> seen) {
+        // Entries are subtrees, ranked by their highest score, and keys, ranked by their
+        // score. Both are upper bounds of the scores found by expanding them, so keys are
+        // taken in order of decreasing score. Smaller nodes come first on ties, which is the
+        // order of their keys.
+        PriorityQueue<Long> queue = new PriorityQueue<>();
+        for (int i = 0; i < numRoots; i++) {
+            queue.add(entry(maxScore[roots[i]], roots[i], false));
+        }
+        while (!queue.isEmpty() && result.size() < limit) {
+            long e = queue.poll();
+            int u = (int) (e >>> 1) & Integer.MAX_VALUE;
+            if ((e & 1) == 1) {
+                // A key has one word per location, so the same word is often repeated.
+                for (int i = wordStart[u]; i < wordStart[u + 1] && result.size() < limit; i++) {
+                    if (seen.add(words[i])) {
+                        result.add(words[i]);
+                    }
+                }
+                continue;
+            }
+            int score = wordStart[u + 1] - wordStart[u];
+            if (score > 0) {
+                queue.add(entry(score, u, true));
+            }
+            for (int i = childStart[u]; i < childStart[u + 1]; i++) {
+                queue.add(entry(maxScore[children[i]], children[i], false));
+            }
+        }
+    }
+
+    /**
+     * Encodes a queue entry so that entries with higher scores, and then smaller nodes,
+     * compare smaller.
+     */
+    private static long entry(int score, int v, boolean isKey) {
+        return (long) (Integer.MAX_VALUE - score) << 32 | (long) v << 1 | (isKey ? 1 : 0);
+    }
+
+    /**
+     * Returns the highest node whose path from the root starts with key, or -1 if there is
+     * none. The path may be longer than key, when key ends in the middle of a label.
+     */
+    private int find(String key) {
+        int v = 0;
+        int pos = 0;
+        while (pos < key.length()) {
+            int child = child(v, key.charAt(pos));
+            if (child < 0) {
+                return -1;
+            }
+            for (int i = labelStart[child]; i < labelStart[child + 1] && pos < key.length();
+                 i++, pos++) {
+                if (labels[i] != key.charAt(pos)) {
+                    return -1;
+                }
+            }
+            v = child;
+        }
+        return v;
+    }
+
+    /**
+     * Returns the child of v whose label starts with c, or -1 if there is none.
+     */
+    private int child(int v, char c) {
+        int lo = childStart[v];
+        int hi = childStart[v + 1] - 1;
+        while (lo <= hi) {
+            int mid = (lo + hi) >>> 1;
+            if (childChar[mid] < c) {
+                lo = mid + 1;
+            } else if (childChar[mid] > c) {
+                hi = mid - 1;
+            } else {
+                return children[mid];
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Returns the number of nodes, which is at most twice the number of keys plus one.
+     */
+    public int numNodes() {
+        return subtreeEnd.length;
+    }
+
+    /**
+     * Returns the number of words, counting a word once per time it was added.
+     */
+    public int numWords() {
+        return words.length;
+    }
+
+    /**
+     * Writes the snapshot section of this trie, which read reads back.
+     */
+    void write(DataOutputStream out) throws IOException {
+        int numNodes = numNodes();
+        out.writeInt(numNodes);
+        out.writeInt(labels.length);
+        out.writeInt(children.length);
+        out.writeInt(words.length);
+        for (char c : labels) {
+            out.writeChar(c);
+        }
+        for (char c : childChar) {
+            out.writeChar(c);
+        }
+        for (int v = 0; v <= numNodes; v++) {
+            out.writeInt(labelStart[v]);
+            out.writeInt(childStart[v]);
+            out.writeInt(wordStart[v]);
+        }
+        for (int v = 0; v < numNodes; v++) {
+            out.writeInt(subtreeEnd[v]);
+            out.writeInt(maxScore[v]);
+        }
+        for (int child : children) {
+            out.writeInt(child);
+        }
+        for (String word : words) {
+            GraphSnapshot.writeString(out, word);
+        }
+    }
+
+    /**
+     * Returns the trie whose snapshot section, written by write, starts at the position of
+     * buf, and moves the position past it. The arrays are copied into the heap.
+     */
+    static RadixTrie read(ByteBuffer buf) {
+        int numNodes = buf.getInt();
+        char[] labels = new char[buf.getInt()];
+        int[] children = new int[buf.getInt()];
+        String[] words = new String[buf.getInt()];
+        char[] childChar = new char[children.length];
+        for (int i = 0; i < labels.length; i++) {
+            labels[i] = buf.getChar();
+        }
+        for (int i = 0; i < childChar.length; i++) {
+            childChar[i] = buf.getChar();
+        }
+        int[] labelStart = new int[numNodes + 1];
+        int[] childStart = new int[numNodes + 1];
+        int[] wordStart = new int[numNodes + 1];
+        for (int v = 0; v <= numNodes; v++) {
+            labelStart[v] = buf.getInt();
+            childStart[v] = buf.getInt();
+            wordStart[v] = buf.getInt();
+        }
+        int[] subtreeEnd = new int[numNodes];
+        int[] maxScore = new int[numNodes];
+        for (int v = 0; v < numNodes; v++) {
+            subtreeEnd[v] = buf.getInt();
+            maxScore[v] = buf.getInt();
+        }
+        for (int i = 0; i < children.length; i++) {
+            children[i] = buf.getInt();
+        }
+        for (int i = 0; i < words.length; i++) {
+            words[i] = GraphSnapshot.readString(buf);
+        }
+        return new RadixTrie(labels, labelStart, childStart, children, childChar, words,
+                wordStart, subtreeEnd, maxScore);
+    }
+}
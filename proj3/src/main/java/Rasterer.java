@@ -8,9 +8,33 @@ import java.util.Map;
  * not draw the output correctly.
  */
 public class Rasterer {
+    /**
+     * The deepest depth of the prerendered tile images.
+     */
+    public static final int DEFAULT_MAX_DEPTH = 7;
+
+    private final int maxDepth;
+    private final TilePrefetcher prefetcher;
 
     public Rasterer() {
-        // YOUR CODE HERE
+        this(DEFAULT_MAX_DEPTH);
+    }
+
+    /**
+     * Creates a Rasterer that uses tiles down to maxDepth, e.g. when tiles are rendered on
+     * the fly instead of being prerendered.
+     */
+    public Rasterer(int maxDepth) {
+        this(maxDepth, null);
+    }
+
+    /**
+     * Creates a Rasterer that uses tiles down to maxDepth, and after each successful query
+     * hands the tiles around the result to a prefetcher, if it is not null.
+     */
+    public Rasterer(int maxDepth, TilePrefetcher prefetcher) {
+        this.maxDepth = maxDepth;
+        this.prefetcher = prefetcher;
     }
 
     /**
@@ -83,6 +107,10 @@ public class Rasterer {
         results.put("raster_ul_lat", MapServer.ROOT_ULLAT - ulY * latPT);
         results.put("raster_lr_lon", MapServer.ROOT_ULLON + (lrX + 1) * lonPT);
         results.put("raster_lr_lat", MapServer.ROOT_ULLAT - (lrY + 1) * latPT);
+
+        if (prefetcher != null) {
+            prefetcher.prefetch(depth, ulX, ulY, lrX, lrY);
+        }
         return results;
     }
 
@@ -120,7 +148,7 @@ public class Rasterer {
     }
 
     /**
-     * Calculates the desired depth. If depth > 7, just return 7.
+     * Calculates the desired depth. If depth > maxDepth, just return maxDepth.
      */
     private int calcDepth(Map<String, Double> params) {
         double userLonDPP = (params.get("lrlon") - params.get("ullon")) / params.get("w");
@@ -128,7 +156,7 @@ public class Rasterer {
                 Math.log((MapServer.ROOT_LRLON - MapServer.ROOT_ULLON)
                         / (MapServer.TILE_SIZE * userLonDPP))
                 / Math.log(2));
-        return Math.min(depth, 7);
+        return Math.min(depth, maxDepth);
     }
 
     /**
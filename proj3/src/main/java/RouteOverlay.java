@@ -0,0 +1,276 @@
+import java.awt.Graphics2D;
+import java.awt.geom.Path2D;
+import java.util.List;
+
+/**
+ * The geometry of a route, prepared for drawing it over rasters. The coordinates of the
+ * route's vertices are looked up once, when the route is found. For each depth a raster
+ * is drawn at, the route is projected once into the pixel space of that depth and
+ * simplified with Douglas-Peucker to within half a pixel, which at shallow depths drops
+ * most of the vertices; the result is kept as float arrays. Drawing then only visits the
+ * chunks of the polyline that intersect the raster, so its cost scales with the visible
+ * geometry rather than with the length of the route.
+ * <p>
+ * Pixel space at depth d is the whole root tile scaled to TILE_SIZE * 2^d pixels square,
+ * with the origin at its upper left corner. The float coordinates are stored relative to
+ * the first vertex, so they stay exact to a pixel for routes spanning up to 2^24 pixels.
+ */
+public class RouteOverlay {
+    private static final double SIMPLIFY_TOLERANCE_PX = 0.5;
+    // Vertices per chunk with a precomputed bounding box.
+    private static final int CHUNK_SIZE = 32;
+    private static final int MAX_DEPTH = 30;
+
+    private final double[] lon;
+    private final double[] lat;
+    // Built on first use. Polylines are immutable, so racing builders are harmless.
+    private final Polyline[] byDepth = new Polyline[MAX_DEPTH + 1];
+
+    /**
+     * A route projected into the pixel space of one depth and simplified.
+     */
+    private static class Polyline {
+        private final double originX;
+        private final double originY;
+        private final float[] xs;
+        private final float[] ys;
+        // Bounding box of the segments starting in each chunk, relative to the origin.
+        private final float[] minX;
+        private final float[] minY;
+        private final float[] maxX;
+        private final float[] maxY;
+
+        Polyline(double originX, double originY, float[] xs, float[] ys) {
+            this.originX = originX;
+            this.originY = originY;
+            this.xs = xs;
+            this.ys = ys;
+            int numChunks = (xs.length + CHUNK_SIZE - 1) / CHUNK_SIZE;
+            minX = new float[numChunks];
+            minY = new float[numChunks];
+            maxX = new float[numChunks];
+            maxY = new float[numChunks];
+            for (int c = 0; c < numChunks; c++) {
+                int from = c * CHUNK_SIZE;
+                // Include the first vertex of the next chunk, which ends the last segment.
+                int to = Math.min(xs.length, from + CHUNK_SIZE + 1);
+                minX[c] = Float.POSITIVE_INFINITY;
+                minY[c] = Float.POSITIVE_INFINITY;
+                maxX[c] = Float.NEGATIVE_INFINITY;
+                maxY[c] = Float.NEGATIVE_INFINITY;
+                for (int i = from; i < to; i++) {
+                    minX[c] = Math.min(minX[c], xs[i]);
+                    minY[c] = Math.min(minY[c], ys[i]);
+                    maxX[c] = Math.max(maxX[c], xs[i]);
+                    maxY[c] = Math.max(maxY[c], ys[i]);
+                }
+            }
+        }
+    }
+
+    /**
+     * Creates the overlay of a route.
+     *
+     * @param g     The graph the route is in.
+     * @param route The ids of the vertices of the route, in order.
+     */
+    public RouteOverlay(GraphDB g, List<Long> route) {
+        lon = new double[route.size()];
+        lat = new double[route.size()];
+        int i = 0;
+        for (long v : route) {
+            lon[i] = g.lon(v);
+            lat[i] = g.lat(v);
+            i += 1;
+        }
+    }
+
+    RouteOverlay(double[] lon, double[] lat) {
+        this.lon = lon;
+        this.lat = lat;
+    }
+
+    /**
+     * Returns the number of vertices of the route.
+     */
+    public int size() {
+        return lon.length;
+    }
+
+    public double lon(int i) {
+        return lon[i];
+    }
+
+    public double lat(int i) {
+        return lat[i];
+    }
+
+    /**
+     * Returns the x coordinate of a longitude in the pixel space of a depth.
+     */
+    public static double pixelX(double lon, int depth) {
+        return (lon - MapServer.ROOT_ULLON) / (MapServer.ROOT_LRLON - MapServer.ROOT_ULLON)
+                * MapServer.TILE_SIZE * Math.pow(2, depth);
+    }
+
+    /**
+     * Returns the y coordinate of a latitude in the pixel space of a depth.
+     */
+    public static double pixelY(double lat, int depth) {
+        return (MapServer.ROOT_ULLAT - lat) / (MapServer.ROOT_ULLAT - MapServer.ROOT_LRLAT)
+                * MapServer.TILE_SIZE * Math.pow(2, depth);
+    }
+
+    /**
+     * Draws the route with the current color and stroke of g2d, onto an image whose upper
+     * left corner is at (ulX, ulY) in the pixel space of depth. Only segments within margin
+     * pixels of the image are drawn.
+     */
+    public void draw(Graphics2D g2d, int depth, double ulX, double ulY,
+                     int width, int height, float margin) {
+        if (lon.length < 2) {
+            return;
+        }
+        Polyline line = polyline(depth);
+        // The image, expanded by the margin, relative to the origin of the polyline.
+        double left = ulX - line.originX - margin;
+        double top = ulY - line.originY - margin;
+        double right = left + width + 2 * margin;
+        double bottom = top + height + 2 * margin;
+        double dx = line.originX - ulX;
+        double dy = line.originY - ulY;
+
+        Path2D.Float path = new Path2D.Float();
+        boolean connected = false;
+        for (int c = 0; c < line.minX.length; c++) {
+            if (line.maxX[c] < left || line.minX[c] > right
+                    || line.maxY[c] < top || line.minY[c] > bottom) {
+                connected = false;
+                continue;
+            }
+            int from = c * CHUNK_SIZE;
+            int to = Math.min(line.xs.length - 1, from + CHUNK_SIZE);
+            for (int i = from; i < to; i++) {
+                float x0 = line.xs[i], y0 = line.ys[i], x1 = line.xs[i + 1], y1 = line.ys[i + 1];
+                if (Math.max(x0, x1) < left || Math.min(x0, x1) > right
+                        || Math.max(y0, y1) < top || Math.min(y0, y1) > bottom) {
+                    connected = false;
+                    continue;
+                }
+                if (!connected) {
+                    path.moveTo(x0 + dx, y0 + dy);
+                    connected = true;
+                }
+                path.lineTo(x1 + dx, y1 + dy);
+            }
+        }
+        g2d.draw(path);
+    }
+
+    /**
+     * Returns the number of vertices left after simplifying the route at a depth.
+     */
+    int simplifiedSize(int depth) {
+        return polyline(depth).xs.length;
+    }
+
+    /**
+     * Returns the simplified vertex i at a depth, as an absolute pixel (x, y).
+     */
+    double[] simplifiedPixel(int depth, int i) {
+        Polyline line = polyline(depth);
+        return new double[]{line.originX + line.xs[i], line.originY + line.ys[i]};
+    }
+
+    private Polyline polyline(int depth) {
+        if (depth < 0 || depth > MAX_DEPTH) {
+            throw new IllegalArgumentException("Unsupported depth: " + depth);
+        }
+        Polyline line = byDepth[depth];
+        if (line == null) {
+            line = project(depth);
+            byDepth[depth] = line;
+        }
+        return line;
+    }
+
+    private Polyline project(int depth) {
+        int n = lon.length;
+        double originX = pixelX(lon[0], depth);
+        double originY = pixelY(lat[0], depth);
+        double[] x = new double[n];
+        double[] y = new double[n];
+        for (int i = 0; i < n; i++) {
+            x[i] = pixelX(lon[i], depth) - originX;
+            y[i] = pixelY(lat[i], depth) - originY;
+        }
+        boolean[] keep = simplify(x, y, SIMPLIFY_TOLERANCE_PX);
+        int kept = 0;
+        for (boolean k : keep) {
+            kept += k ? 1 : 0;
+        }
+        float[] xs = new float[kept];
+        float[] ys = new float[kept];
+        for (int i = 0, j = 0; i < n; i++) {
+            if (keep[i]) {
+                xs[j] = (float) x[i];
+                ys[j] = (float) y[i];
+                j += 1;
+            }
+        }
+        return new Polyline(originX, originY, xs, ys);
+    }
+
+    /**
+     * Douglas-Peucker: returns which points of the polyline to keep so that no dropped
+     * point is farther than tolerance from the simplified polyline. Uses an explicit stack
+     * of ranges instead of recursion, since routes can have many thousands of points.
+     */
+    static boolean[] simplify(double[] x, double[] y, double tolerance) {
+        int n = x.length;
+        boolean[] keep = new boolean[n];
+        if (n == 0) {
+            return keep;
+        }
+        keep[0] = true;
+        keep[n - 1] = true;
+        int[] stack = new int[2 * n];
+        int top = 0;
+        stack[top++] = 0;
+        stack[top++] = n - 1;
+        while (top > 0) {
+            int last = stack[--top];
+            int first = stack[--top];
+            int farthest = -1;
+            double farthestDist = tolerance;
+            for (int i = first + 1; i < last; i++) {
+                double d = segmentDistance(x[i], y[i], x[first], y[first], x[last], y[last]);
+                if (d > farthestDist) {
+                    farthestDist = d;
+                    farthest = i;
+                }
+            }
+            if (farthest >= 0) {
+                keep[farthest] = true;
+                stack[top++] = first;
+                stack[top++] = farthest;
+                stack[top++] = farthest;
+                stack[top++] = last;
+            }
+        }
+        return keep;
+    }
+
+    /**
+     * Returns the distance from (px, py) to the segment from (ax, ay) to (bx, by).
+     */
+    static double segmentDistance(double px, double py, double ax, double ay,
+                                  double bx, double by) {
+        double dx = bx - ax;
+        double dy = by - ay;
+        double lengthSquared = dx * dx + dy * dy;
+        double t = lengthSquared == 0 ? 0
+                : Math.max(0, Math.min(1, ((px - ax) * dx + (py - ay) * dy) / lengthSquared));
+        return Math.hypot(px - (ax + t * dx), py - (ay + t * dy));
+    }
+}
@@ -0,0 +1,186 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongSupplier;
+
+/**
+ * The current route of each client of the MapServer, keyed by session id. Requests of
+ * different sessions never see each other's routes, and only touch their own map entry,
+ * so the handlers do not need a global lock.
+ * <p>
+ * Storage is bounded: a route expires once its session has been idle for longer than the
+ * time to live, and when more than maxSessions routes are stored, the least recently used
+ * ones are dropped. Every stored route gets a new version number, unique across sessions,
+ * which changes whenever what a session's rasters have to draw changes.
+ */
+public class RouteStore {
+    private final int maxSessions;
+    private final long ttlMillis;
+    private final LongSupplier clock;
+    private final Map<String, Entry> routes = new ConcurrentHashMap<>();
+    private final AtomicLong versions = new AtomicLong();
+
+    /**
+     * A stored route, its overlay and its version, read together so that they always match.
+     */
+    public static class Route {
+        /** The route of sessions that have none. */
+        public static final Route EMPTY = new Route(Collections.emptyList(), null, 0);
+
+        private final List<Long> nodes;
+        private final RouteOverlay overlay;
+        private final long version;
+
+        Route(List<Long> nodes, RouteOverlay overlay, long version) {
+            this.nodes = nodes;
+            this.overlay = overlay;
+            this.version = version;
+        }
+
+        /** Returns the vertex ids of the route, as a read-only list. */
+        public List<Long> nodes() {
+            return nodes;
+        }
+
+        /** Returns the geometry of the route for drawing, or null if it was stored without. */
+        public RouteOverlay overlay() {
+            return overlay;
+        }
+
+        /** Returns the version of the route, or 0 for the empty route. */
+        public long version() {
+            return version;
+        }
+    }
+
+    private static class Entry {
+        private final Route route;
+        private volatile long lastAccess;
+
+        Entry(Route route, long now) {
+            this.route = route;
+            this.lastAccess = now;
+        }
+    }
+
+    /**
+     * Creates an empty store.
+     *
+     * @param maxSessions The maximum number of routes kept.
+     * @param ttlMillis   How long an unused route is kept, in milliseconds.
+     */
+    public RouteStore(int maxSessions, long ttlMillis) {
+        this(maxSessions, ttlMillis, System::currentTimeMillis);
+    }
+
+    RouteStore(int maxSessions, long ttlMillis, LongSupplier clock) {
+        if (maxSessions <= 0) {
+            throw new IllegalArgumentException("maxSessions must be positive: " + maxSessions);
+        }
+        this.maxSessions = maxSessions;
+        this.ttlMillis = ttlMillis;
+        this.clock = clock;
+    }
+
+    /**
+     * Returns the route of a session, or Route.EMPTY if it has none.
+     */
+    public Route get(String session) {
+        Entry entry = live(session);
+        return entry == null ? Route.EMPTY : entry.route;
+    }
+
+    /**
+     * Replaces the route of a session, without an overlay.
+     *
+     * @return The version of the new route.
+     */
+    public long put(String session, List<Long> route) {
+        return put(session, route, null);
+    }
+
+    /**
+     * Replaces the route of a session.
+     *
+     * @return The version of the new route.
+     */
+    public long put(String session, List<Long> route, RouteOverlay overlay) {
+        long now = clock.getAsLong();
+        long version = versions.incrementAndGet();
+        Route stored = new Route(Collections.unmodifiableList(route), overlay, version);
+        routes.put(session, new Entry(stored, now));
+        if (routes.size() > maxSessions) {
+            evict(session, now);
+        }
+        return version;
+    }
+
+    /**
+     * Forgets the route of a session.
+     */
+    public void clear(String session) {
+        routes.remove(session);
+    }
+
+    /**
+     * Returns the number of stored routes, including expired ones not yet dropped.
+     */
+    public int size() {
+        return routes.size();
+    }
+
+    /**
+     * Returns the entry of a session and marks it as used, or null if it has none or it
+     * has expired.
+     */
+    private Entry live(String session) {
+        Entry entry = routes.get(session);
+        if (entry == null) {
+            return null;
+        }
+        long now = clock.getAsLong();
+        if (now - entry.lastAccess > ttlMillis) {
+            routes.remove(session, entry);
+            return null;
+        }
+        entry.lastAccess = now;
+        return entry;
+    }
+
+    /**
+     * Drops expired routes, then the least recently used ones until the store is a tenth
+     * below capacity, so that the linear scan runs at most once per maxSessions / 10 puts.
+     * The route of the session keep, just stored, is never dropped, even when other routes
+     * were used in the same millisecond.
+     */
+    private synchronized void evict(String keep, long now) {
+        routes.entrySet().removeIf(e -> now - e.getValue().lastAccess > ttlMillis);
+        int target = maxSessions - maxSessions / 10;
+        // Access times keep changing under concurrent gets, so sort a snapshot of them and
+        // drop a fixed number of the oldest entries, each only if it was not replaced since.
+        List<Map.Entry<String, Entry>> snapshot = new ArrayList<>(routes.entrySet());
+        int excess = snapshot.size() - target;
+        if (excess <= 0) {
+            return;
+        }
+        long[] accesses = new long[snapshot.size()];
+        Integer[] order = new Integer[snapshot.size()];
+        for (int i = 0; i < order.length; i++) {
+            accesses[i] = snapshot.get(i).getValue().lastAccess;
+            order[i] = i;
+        }
+        Arrays.sort(order, Comparator.comparingLong(i -> accesses[i]));
+        for (int i = 0; i < order.length && excess > 0; i++) {
+            Map.Entry<String, Entry> e = snapshot.get(order[i]);
+            if (!e.getKey().equals(keep)) {
+                routes.remove(e.getKey(), e.getValue());
+                excess--;
+            }
+        }
+    }
+}
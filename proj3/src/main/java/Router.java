@@ -3,11 +3,6 @@ import java.util.Collections;
 import java.util.List;
 import java.util.LinkedList;
 import java.util.ArrayList;
-import java.util.Map;
-import java.util.HashMap;
-import java.util.Set;
-import java.util.HashSet;
-import java.util.PriorityQueue;
 import java.util.Objects;
 
 import java.util.regex.Matcher;
@@ -23,12 +18,12 @@ import java.util.regex.Pattern;
  */
 public class Router {
 
-    private static boolean found;
-
     /**
      * Return a List of longs representing the shortest path from the node
      * closest to a start location and the node closest to the destination
-     * location.
+     * location. Uses the graph's contraction hierarchy if it has one, and A*
+     * otherwise. A* uses the graph's landmarks (ALT) as its heuristic if it has
+     * them, and a lower bound of the great-circle distance to the destination if not.
      *
      * @param g       The graph to use.
      * @param stlon   The longitude of the start location.
@@ -41,72 +36,253 @@ public class Router {
                                           double destlon, double destlat) {
         long start = g.closest(stlon, stlat);
         long dest = g.closest(destlon, destlat);
+        if (g.contractionHierarchy() != null) {
+            return g.contractionHierarchy().search(start, dest).route;
+        }
+        return astarSearch(g, g.landmarks(), start, dest).route;
+    }
 
-        found = false;
-        Map<Long, Long> edgeTo = astar(g, start, dest);
+    /**
+     * Return a List of longs representing the fastest path from the node closest to a
+     * start location and the node closest to the destination location, i.e. the one that
+     * takes the least time at the speed limits of its roads rather than the shortest one.
+     * Uses A* with the distance lower bound at the highest speed of the graph as its
+     * heuristic; the contraction hierarchy and landmarks are built for distances, so they
+     * are not used.
+     *
+     * @param g       The graph to use.
+     * @param stlon   The longitude of the start location.
+     * @param stlat   The latitude of the start location.
+     * @param destlon The longitude of the destination location.
+     * @param destlat The latitude of the destination location.
+     * @return A list of node id's in the order visited on the fastest path.
+     */
+    public static List<Long> fastestPath(GraphDB g, double stlon, double stlat,
+                                         double destlon, double destlat) {
+        long start = g.closest(stlon, stlat);
+        long dest = g.closest(destlon, destlat);
+        return fastestSearch(g, start, dest).route;
+    }
 
-        List<Long> spt = new LinkedList<>();
-        if (found) {
-            for (long cur = dest; cur != start; cur = edgeTo.get(cur)) {
-                spt.add(cur);
-            }
-            spt.add(start);
-            Collections.reverse(spt);
+    /**
+     * Same as shortestPath, but searches forward from the start and backward from the
+     * destination at the same time, which settles far fewer vertices on long routes.
+     * The route has the same length as the one shortestPath finds.
+     *
+     * @param g       The graph to use.
+     * @param stlon   The longitude of the start location.
+     * @param stlat   The latitude of the start location.
+     * @param destlon The longitude of the destination location.
+     * @param destlat The latitude of the destination location.
+     * @return A list of node id's in the order visited on the shortest path.
+     */
+    public static List<Long> shortestPathBidirectional(GraphDB g, double stlon, double stlat,
+                                                       double destlon, double destlat) {
+        long start = g.closest(stlon, stlat);
+        long dest = g.closest(destlon, destlat);
+        return bidirectionalSearch(g, start, dest).route;
+    }
+
+    /**
+     * The route found by a search, along with the number of vertices it settled.
+     */
+    static class SearchResult {
+        final List<Long> route;
+        final int settled;
+
+        SearchResult(List<Long> route, int settled) {
+            this.route = route;
+            this.settled = settled;
         }
-        return spt;
     }
 
-    private static Map<Long, Long> astar(GraphDB graph, long src, long target) {
-        Map<Long, Long> edgeTo = new HashMap<>();
-        Map<Long, Double> distTo = new HashMap<>();
-        PriorityQueue<PQNode> pq = new PriorityQueue<>();
-        Set<Long> marked = new HashSet<>();
+    static SearchResult astarSearch(GraphDB g, long start, long dest) {
+        return astarSearch(g, null, start, dest);
+    }
 
-        edgeTo.put(src, src);
-        distTo.put(src, 0.0);
-        pq.add(new PQNode(src, graph.distance(src, target)));
+    /**
+     * A* from start to dest. The heuristic is CompactGraph.lowerBound, or, if landmarks is
+     * not null, the larger of it and the landmark (ALT) lower bound.
+     * Works on the dense vertex indices of the compact graph with a reusable
+     * SearchContext, so the only allocation of a query is the returned route.
+     */
+    static SearchResult astarSearch(GraphDB graph, Landmarks landmarks, long start, long dest) {
+        return astarSearch(graph, landmarks, start, dest, false);
+    }
 
-        while (!pq.isEmpty()) {
-            long v = pq.poll().id;
-            if (marked.contains(v)) {
-                continue;
-            }
-            if (v == target) {
-                found = true;
-                break;
-            }
+    /**
+     * A* from start to dest minimizing travel time instead of distance.
+     */
+    static SearchResult fastestSearch(GraphDB graph, long start, long dest) {
+        return astarSearch(graph, null, start, dest, true);
+    }
 
-            marked.add(v);
-            for (long w : graph.adjacent(v)) {
-                double curDist = distTo.get(v) + graph.distance(v, w);
-                if (distTo.get(w) == null || curDist < distTo.get(w)) {
-                    distTo.put(w, curDist);
-                    edgeTo.put(w, v);
-                    pq.add(new PQNode(w, curDist + graph.distance(w, target)));
+    /**
+     * A* from start to dest, over travel times if byTime is true and over distances
+     * otherwise. Landmarks must be null when searching by time. If dest is in another
+     * connected component, the route is empty and nothing is searched.
+     */
+    private static SearchResult astarSearch(GraphDB graph, Landmarks landmarks, long start,
+                                            long dest, boolean byTime) {
+        CompactGraph g = graph.compactGraph();
+        int src = g.indexOf(start);
+        int target = g.indexOf(dest);
+        if (!g.connected(src, target)) {
+            // Fail fast instead of settling the whole component of src.
+            return new SearchResult(new ArrayList<>(), 0);
+        }
+        SearchContext ctx = SearchContext.acquire(g.size());
+        try {
+            ctx.reset();
+            IndexMinPQ pq = ctx.pq();
+
+            ctx.reach(src, 0, src);
+            pq.insertOrDecrease(src, heuristic(g, ctx, landmarks, src, target, byTime));
+            boolean found = false;
+            int settled = 0;
+            while (!pq.isEmpty()) {
+                int v = pq.delMin();
+                if (v == target) {
+                    found = true;
+                    break;
+                }
+                ctx.settle(v);
+                settled += 1;
+                double distV = ctx.distTo(v);
+                for (int e = g.edgeStart(v); e < g.edgeEnd(v); e++) {
+                    int w = g.target(e);
+                    if (ctx.isSettled(w)) {
+                        continue;
+                    }
+                    double curDist = distV + (byTime ? g.travelTime(e) : g.length(e));
+                    if (curDist < ctx.distTo(w)) {
+                        ctx.reach(w, curDist, v);
+                        pq.insertOrDecrease(w,
+                                curDist + heuristic(g, ctx, landmarks, w, target, byTime));
+                    }
                 }
             }
+            return new SearchResult(found ? pathTo(g, ctx, src, target) : new ArrayList<>(),
+                    settled);
+        } finally {
+            SearchContext.release(ctx);
         }
-        return edgeTo;
     }
 
-    private static class PQNode implements Comparable<PQNode> {
-        private final long id;
-        private final double priority;
+    /**
+     * Returns the ids on the path from src to v in the search tree of ctx.
+     */
+    private static List<Long> pathTo(CompactGraph g, SearchContext ctx, int src, int v) {
+        List<Long> path = new ArrayList<>();
+        for (int cur = v; cur != src; cur = ctx.edgeTo(cur)) {
+            path.add(g.id(cur));
+        }
+        path.add(g.id(src));
+        Collections.reverse(path);
+        return path;
+    }
 
-        PQNode(long id, double priority) {
-            this.id = id;
-            this.priority = priority;
+    /**
+     * Returns the A* heuristic of v, computing it only the first time it is needed in a
+     * search.
+     */
+    private static double heuristic(CompactGraph g, SearchContext ctx, Landmarks landmarks,
+                                    int v, int target, boolean byTime) {
+        if (!ctx.hasPotential(v)) {
+            double h = byTime ? g.travelTimeLowerBound(v, target) : g.lowerBound(v, target);
+            if (landmarks != null) {
+                h = Math.max(h, landmarks.lowerBound(v, target));
+            }
+            ctx.setPotential(v, h);
         }
+        return ctx.potential(v);
+    }
 
-        @Override
-        public int compareTo(PQNode o) {
-            if (priority < o.priority) {
-                return -1;
-            } else if (priority > o.priority) {
-                return 1;
+    /**
+     * Bidirectional A* over the compact graph. Both searches use the average potential
+     * p(v) = (h(v, target) - h(v, src)) / 2 (the backward search uses -p), which is
+     * consistent, so the searches can stop as soon as the smallest keys of the two
+     * queues add up to at least the best route length seen so far.
+     */
+    static SearchResult bidirectionalSearch(GraphDB graph, long srcId, long targetId) {
+        CompactGraph g = graph.compactGraph();
+        int src = g.indexOf(srcId);
+        int target = g.indexOf(targetId);
+        List<Long> spt = new ArrayList<>();
+        if (src == target) {
+            spt.add(srcId);
+            return new SearchResult(spt, 1);
+        }
+        if (!g.connected(src, target)) {
+            return new SearchResult(spt, 0);
+        }
+
+        SearchContext forward = SearchContext.acquire(g.size());
+        SearchContext backward = SearchContext.acquire(g.size());
+        try {
+            forward.reset();
+            backward.reset();
+            forward.reach(src, 0, src);
+            forward.pq().insertOrDecrease(src, potential(g, forward, src, src, target));
+            backward.reach(target, 0, target);
+            backward.pq().insertOrDecrease(target, -potential(g, forward, target, src, target));
+
+            double best = Double.POSITIVE_INFINITY;
+            int meet = -1;
+            int settled = 0;
+            while (!forward.pq().isEmpty() && !backward.pq().isEmpty()) {
+                double topF = forward.pq().minKey();
+                double topB = backward.pq().minKey();
+                if (topF + topB >= best) {
+                    break;
+                }
+                boolean isForward = topF <= topB;
+                SearchContext side = isForward ? forward : backward;
+                SearchContext other = isForward ? backward : forward;
+                int sign = isForward ? 1 : -1;
+
+                int v = side.pq().delMin();
+                side.settle(v);
+                settled += 1;
+                double distV = side.distTo(v);
+                for (int e = g.edgeStart(v); e < g.edgeEnd(v); e++) {
+                    int w = g.target(e);
+                    double curDist = distV + g.length(e);
+                    if (curDist < side.distTo(w)) {
+                        side.reach(w, curDist, v);
+                        // Potentials are cached in the forward context only.
+                        side.pq().insertOrDecrease(w,
+                                curDist + sign * potential(g, forward, w, src, target));
+                    }
+                    if (side.distTo(w) + other.distTo(w) < best) {
+                        best = side.distTo(w) + other.distTo(w);
+                        meet = w;
+                    }
+                }
+            }
+
+            if (meet >= 0) {
+                spt = pathTo(g, forward, src, meet);
+                for (int cur = meet; cur != target; ) {
+                    cur = backward.edgeTo(cur);
+                    spt.add(g.id(cur));
+                }
             }
-            return 0;
+            return new SearchResult(spt, settled);
+        } finally {
+            SearchContext.release(forward);
+            SearchContext.release(backward);
+        }
+    }
+
+    private static double potential(CompactGraph g, SearchContext ctx, int v,
+                                    int src, int target) {
+        if (!ctx.hasPotential(v)) {
+            double toTarget = g.lowerBound(v, target);
+            double toSrc = g.lowerBound(v, src);
+            ctx.setPotential(v, (toTarget - toSrc) / 2);
         }
+        return ctx.potential(v);
     }
 
     /**
@@ -0,0 +1,132 @@
+import java.util.Arrays;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+/**
+ * Reusable state of one direction of a shortest path search over dense vertex indices:
+ * distTo, edgeTo, settled flags, a cache of heuristic values and an indexed priority
+ * queue. The arrays are allocated once; reset() starts a new search by bumping a
+ * generation counter, and any entry stamped with an older generation reads as unset,
+ * so a query does not clear or allocate anything proportional to the graph size.
+ */
+public class SearchContext {
+    private final double[] distTo;
+    private final int[] edgeTo;
+    private final double[] potential;
+    // Generation in which distTo/edgeTo, settled and potential were last written.
+    private final int[] reachedAt;
+    private final int[] settledAt;
+    private final int[] potentialAt;
+    private int generation = 0;
+    private final IndexMinPQ pq;
+
+    // Idle contexts shared by all threads. Each one holds 48 bytes per vertex, and a
+    // search uses at most two, so the pool keeps two per CPU however many threads the
+    // server runs; searches beyond that allocate contexts and drop them when done.
+    private static final BlockingQueue<SearchContext> POOL =
+            new ArrayBlockingQueue<>(2 * Runtime.getRuntime().availableProcessors());
+
+    /**
+     * Creates a context for a graph with n vertices.
+     */
+    public SearchContext(int n) {
+        distTo = new double[n];
+        edgeTo = new int[n];
+        potential = new double[n];
+        reachedAt = new int[n];
+        settledAt = new int[n];
+        potentialAt = new int[n];
+        pq = new IndexMinPQ(n);
+    }
+
+    /**
+     * Takes an idle context sized for a graph with n vertices from the shared pool, or
+     * creates one. The caller owns it, so that searches on different threads never share
+     * state, until it hands it back with release.
+     */
+    static SearchContext acquire(int n) {
+        SearchContext context = POOL.poll();
+        if (context == null || context.size() != n) {
+            context = new SearchContext(n);
+        }
+        return context;
+    }
+
+    /**
+     * Returns a context taken with acquire to the shared pool, or drops it if the pool is
+     * full. The caller must not use it afterwards.
+     */
+    static void release(SearchContext context) {
+        POOL.offer(context);
+    }
+
+    /**
+     * Returns the number of vertices this context was created for.
+     */
+    int size() {
+        return distTo.length;
+    }
+
+    /**
+     * Forgets the previous search.
+     */
+    void reset() {
+        pq.clear();
+        generation += 1;
+        if (generation == Integer.MAX_VALUE) {
+            // Only after ~2 billion searches: wipe the stamps so they cannot collide.
+            Arrays.fill(reachedAt, 0);
+            Arrays.fill(settledAt, 0);
+            Arrays.fill(potentialAt, 0);
+            generation = 1;
+        }
+    }
+
+    IndexMinPQ pq() {
+        return pq;
+    }
+
+    /**
+     * Returns the best known distance to v in this search, or infinity.
+     */
+    double distTo(int v) {
+        return reachedAt[v] == generation ? distTo[v] : Double.POSITIVE_INFINITY;
+    }
+
+    /**
+     * Returns the predecessor of v on its best known path. Only valid if v was reached.
+     */
+    int edgeTo(int v) {
+        return edgeTo[v];
+    }
+
+    /**
+     * Records a new best path to v, through from.
+     */
+    void reach(int v, double dist, int from) {
+        distTo[v] = dist;
+        edgeTo[v] = from;
+        reachedAt[v] = generation;
+    }
+
+    boolean isSettled(int v) {
+        return settledAt[v] == generation;
+    }
+
+    void settle(int v) {
+        settledAt[v] = generation;
+    }
+
+    boolean hasPotential(int v) {
+        return potentialAt[v] == generation;
+    }
+
+    double potential(int v) {
+        return potential[v];
+    }
+
+    void setPotential(int v, double p) {
+        potential[v] = p;
+        potentialAt[v] = generation;
+    }
+}
@@ -0,0 +1,87 @@
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * Coalesces concurrent identical computations: while the computation of a key is in
+ * flight, further callers with the same key wait for it and receive its result, instead
+ * of repeating the work. Once it is done the key is forgotten, so a later caller computes
+ * again; caching results is left to the caller.
+ */
+public class SingleFlight<K, V> {
+    private final Map<K, CompletableFuture<V>> inFlight = new ConcurrentHashMap<>();
+    private final LongAdder executions = new LongAdder();
+    private final LongAdder coalesced = new LongAdder();
+
+    /**
+     * Returns the result of computation for key, computing it on the calling thread unless
+     * an identical call is already in flight, in which case its result is shared. If the
+     * computation throws, every caller waiting on it gets the same exception.
+     *
+     * @param key         Identifies the computation; equal keys must give equal results.
+     * @param computation Computes the result.
+     */
+    public V execute(K key, Supplier<V> computation) {
+        CompletableFuture<V> mine = new CompletableFuture<>();
+        CompletableFuture<V> theirs = inFlight.putIfAbsent(key, mine);
+        if (theirs != null) {
+            coalesced.increment();
+            return join(theirs);
+        }
+        executions.increment();
+        try {
+            V result = computation.get();
+            mine.complete(result);
+            return result;
+        } catch (RuntimeException | Error e) {
+            mine.completeExceptionally(e);
+            throw e;
+        } finally {
+            inFlight.remove(key, mine);
+        }
+    }
+
+    private static <V> V join(CompletableFuture<V> future) {
+        try {
+            return future.join();
+        } catch (CompletionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * Returns the number of computations that ran.
+     */
+    public long executions() {
+        return executions.sum();
+    }
+
+    /**
+     * Returns the number of calls that shared the result of another call.
+     */
+    public long coalesced() {
+        return coalesced.sum();
+    }
+
+    /**
+     * Returns the counters, e.g. for a JSON status response.
+     */
+    public Map<String, Object> stats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("executions", executions());
+        stats.put("coalesced", coalesced());
+        stats.put("in_flight", inFlight.size());
+        return stats;
+    }
+}
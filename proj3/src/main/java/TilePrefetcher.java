@@ -0,0 +1,141 @@
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+
+/**
+ * Warms the tile cache with the tiles a user is likely to need next: after a raster of the
+ * tiles (ulX, ulY) to (lrX, lrY) at some depth is answered, the ring of tiles around it at
+ * the same depth (for panning) and the tiles covering it at the depths above and below (for
+ * zooming) are loaded in the background. Prefetching must never slow down real requests,
+ * so it runs on its own thread with a bounded queue, and is dropped when the queue is full.
+ * <p>
+ * To measure how useful it is, the prefetcher remembers the most recent tiles it loaded.
+ * A prefetch hit is a requested tile that was loaded by the prefetcher before it was asked
+ * for; a late one was still being loaded.
+ */
+public class TilePrefetcher {
+    private static final int QUEUE_CAPACITY = 256;
+    private static final int MAX_TRACKED_TILES = 4096;
+
+    private final Predicate<String> isCached;
+    private final Consumer<String> load;
+    private final int maxDepth;
+    private final ExecutorService executor;
+    // Tiles scheduled by the prefetcher and not requested since: true once loaded.
+    private final LruCache<String, Boolean> prefetched =
+            new LruCache<>(MAX_TRACKED_TILES, loaded -> 1);
+
+    private final LongAdder scheduled = new LongAdder();
+    private final LongAdder dropped = new LongAdder();
+    private final LongAdder completed = new LongAdder();
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder late = new LongAdder();
+
+    /**
+     * Creates a prefetcher.
+     *
+     * @param isCached Returns whether the tile with the given name is already cached.
+     * @param load     Loads the tile with the given name into the cache.
+     * @param maxDepth The deepest depth rasters are made of.
+     */
+    public TilePrefetcher(Predicate<String> isCached, Consumer<String> load, int maxDepth) {
+        this.isCached = isCached;
+        this.load = load;
+        this.maxDepth = maxDepth;
+        this.executor = new ThreadPoolExecutor(1, 1, 0, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(QUEUE_CAPACITY), r -> {
+                    Thread t = new Thread(r, "tile-prefetcher");
+                    t.setDaemon(true);
+                    return t;
+                });
+    }
+
+    /**
+     * Records that the tiles (ulX, ulY) to (lrX, lrY) at depth were requested, and schedules
+     * the tiles around them.
+     */
+    public void prefetch(int depth, int ulX, int ulY, int lrX, int lrY) {
+        for (int y = ulY; y <= lrY; y++) {
+            for (int x = ulX; x <= lrX; x++) {
+                Boolean loaded = prefetched.remove(TileRenderer.tileName(depth, x, y));
+                if (loaded != null) {
+                    (loaded ? hits : late).increment();
+                }
+            }
+        }
+
+        // The ring around the box at the same depth.
+        for (int x = ulX - 1; x <= lrX + 1; x++) {
+            schedule(depth, x, ulY - 1);
+            schedule(depth, x, lrY + 1);
+        }
+        for (int y = ulY; y <= lrY; y++) {
+            schedule(depth, ulX - 1, y);
+            schedule(depth, lrX + 1, y);
+        }
+        // The tiles covering the box one level up and one level down.
+        if (depth > 0) {
+            scheduleBox(depth - 1, ulX / 2, ulY / 2, lrX / 2, lrY / 2);
+        }
+        if (depth < maxDepth) {
+            scheduleBox(depth + 1, 2 * ulX, 2 * ulY, 2 * lrX + 1, 2 * lrY + 1);
+        }
+    }
+
+    private void scheduleBox(int depth, int ulX, int ulY, int lrX, int lrY) {
+        for (int y = ulY; y <= lrY; y++) {
+            for (int x = ulX; x <= lrX; x++) {
+                schedule(depth, x, y);
+            }
+        }
+    }
+
+    private void schedule(int depth, int x, int y) {
+        if (!TileRenderer.isTile(depth, x, y)) {
+            return;
+        }
+        String name = TileRenderer.tileName(depth, x, y);
+        if (prefetched.containsKey(name) || isCached.test(name)) {
+            return;
+        }
+        prefetched.put(name, false);
+        try {
+            executor.execute(() -> {
+                load.accept(name);
+                // If the tile is requested right between these two calls, it is tracked again;
+                // that only skews the statistics, by one tile.
+                if (prefetched.containsKey(name)) {
+                    prefetched.put(name, true);
+                }
+                completed.increment();
+            });
+            scheduled.increment();
+        } catch (RejectedExecutionException e) {
+            prefetched.remove(name);
+            dropped.increment();
+        }
+    }
+
+    /**
+     * Returns the counters, e.g. for a JSON status response. The hit rate is the fraction
+     * of prefetched tiles that were requested afterwards.
+     */
+    public Map<String, Object> stats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        long done = completed.sum();
+        stats.put("scheduled", scheduled.sum());
+        stats.put("dropped", dropped.sum());
+        stats.put("completed", done);
+        stats.put("hits", hits.sum());
+        stats.put("late", late.sum());
+        stats.put("hit_rate", done == 0 ? 0.0 : (double) hits.sum() / done);
+        return stats;
+    }
+}
@@ -0,0 +1,196 @@
+import java.awt.BasicStroke;
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.geom.Line2D;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+import javax.imageio.ImageIO;
+
+/**
+ * Draws map tiles directly from the road geometry of a graph, at any depth, in the same
+ * tile scheme as the prerendered images: tile (x, y) at depth d covers 1 / 2^d of the root
+ * tile in each direction, and is TILE_SIZE pixels square. Only the roads near a tile are
+ * fetched, through an EdgeGrid. Rendered tiles are written to a cache directory, so each
+ * tile is drawn once; the MapServer keeps decoded tiles in memory on top of that.
+ */
+public class TileRenderer {
+    private static final Color BACKGROUND_COLOR = new Color(242, 239, 233);
+    private static final Color CASING_COLOR = new Color(190, 180, 170);
+    private static final Color ROAD_COLOR = Color.WHITE;
+    // Roads are drawn this wide at depth 7 and twice as wide per level deeper.
+    private static final float BASE_DEPTH_ROAD_WIDTH_PX = 1.5f;
+    private static final int BASE_DEPTH = 7;
+    private static final float MIN_ROAD_WIDTH_PX = 0.5f;
+    private static final float MAX_ROAD_WIDTH_PX = 24f;
+
+    private final CompactGraph g;
+    private final EdgeGrid edges;
+    private final File cacheDir;
+
+    /**
+     * Creates a renderer for a graph.
+     *
+     * @param g        The graph whose roads are drawn.
+     * @param cacheDir Directory rendered tiles are written to, or null not to keep them.
+     */
+    public TileRenderer(CompactGraph g, String cacheDir) {
+        this.g = g;
+        this.edges = new EdgeGrid(g);
+        this.cacheDir = cacheDir == null ? null : new File(cacheDir);
+    }
+
+    /**
+     * Returns the file name of tile (x, y) at depth, e.g. d2_x1_y3.png.
+     */
+    public static String tileName(int depth, int x, int y) {
+        return "d" + depth + "_x" + x + "_y" + y + ".png";
+    }
+
+    /**
+     * Returns the depth, x and y of a tile file name, or null if it is not one.
+     */
+    public static int[] parseTileName(String name) {
+        String[] parts = name.replace(".png", "").split("_");
+        if (parts.length != 3 || !parts[0].startsWith("d") || !parts[1].startsWith("x")
+                || !parts[2].startsWith("y") || !name.endsWith(".png")) {
+            return null;
+        }
+        try {
+            return new int[]{Integer.parseInt(parts[0].substring(1)),
+                Integer.parseInt(parts[1].substring(1)), Integer.parseInt(parts[2].substring(1))};
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Returns whether (x, y) is a tile of the given depth.
+     */
+    public static boolean isTile(int depth, int x, int y) {
+        return depth >= 0 && depth < 31 && x >= 0 && y >= 0 && x < 1 << depth && y < 1 << depth;
+    }
+
+    /**
+     * Returns the rendered tile, from the cache directory if it was rendered before.
+     */
+    public BufferedImage load(int depth, int x, int y) {
+        File file = cachedFile(depth, x, y);
+        if (file != null && file.isFile()) {
+            try {
+                BufferedImage img = ImageIO.read(file);
+                if (img != null) {
+                    return img;
+                }
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+        BufferedImage img = render(depth, x, y);
+        if (file != null) {
+            write(img, file);
+        }
+        return img;
+    }
+
+    /**
+     * Returns the file of the rendered tile in the cache directory, rendering it first if
+     * needed.
+     *
+     * @throws IOException If there is no cache directory, or the file cannot be written.
+     */
+    public File file(int depth, int x, int y) throws IOException {
+        File file = cachedFile(depth, x, y);
+        if (file == null) {
+            throw new IOException("Rendered tiles are not kept on disk.");
+        }
+        if (!file.isFile() && !write(render(depth, x, y), file)) {
+            throw new IOException("Could not write " + file);
+        }
+        return file;
+    }
+
+    /**
+     * Draws tile (x, y) at depth.
+     */
+    public BufferedImage render(int depth, int x, int y) {
+        int size = MapServer.TILE_SIZE;
+        BufferedImage img = new BufferedImage(size, size, BufferedImage.TYPE_INT_RGB);
+        Graphics2D g2d = img.createGraphics();
+        g2d.setColor(BACKGROUND_COLOR);
+        g2d.fillRect(0, 0, size, size);
+        g2d.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
+
+        float width = roadWidth(depth);
+        double tileLon = (MapServer.ROOT_LRLON - MapServer.ROOT_ULLON) / Math.pow(2, depth);
+        double tileLat = (MapServer.ROOT_ULLAT - MapServer.ROOT_LRLAT) / Math.pow(2, depth);
+        // Also fetch roads just outside the tile whose stroke reaches into it.
+        double marginLon = tileLon * (width + 2) / size;
+        double marginLat = tileLat * (width + 2) / size;
+        double ulLon = MapServer.ROOT_ULLON + x * tileLon;
+        double ulLat = MapServer.ROOT_ULLAT - y * tileLat;
+        double ulX = (double) x * size;
+        double ulY = (double) y * size;
+
+        List<Line2D.Double> lines = new ArrayList<>();
+        edges.query(ulLon - marginLon, ulLat - tileLat - marginLat,
+                ulLon + tileLon + marginLon, ulLat + marginLat, (v, w) -> lines.add(
+                    new Line2D.Double(RouteOverlay.pixelX(g.lon(v), depth) - ulX,
+                        RouteOverlay.pixelY(g.lat(v), depth) - ulY,
+                        RouteOverlay.pixelX(g.lon(w), depth) - ulX,
+                        RouteOverlay.pixelY(g.lat(w), depth) - ulY)));
+
+        // Casings first, so that roads crossing each other look joined.
+        g2d.setColor(CASING_COLOR);
+        g2d.setStroke(new BasicStroke(width + 2, BasicStroke.CAP_ROUND, BasicStroke.JOIN_ROUND));
+        for (Line2D.Double line : lines) {
+            g2d.draw(line);
+        }
+        g2d.setColor(ROAD_COLOR);
+        g2d.setStroke(new BasicStroke(width, BasicStroke.CAP_ROUND, BasicStroke.JOIN_ROUND));
+        for (Line2D.Double line : lines) {
+            g2d.draw(line);
+        }
+        g2d.dispose();
+        return img;
+    }
+
+    private static float roadWidth(int depth) {
+        float width = BASE_DEPTH_ROAD_WIDTH_PX * (float) Math.pow(2, depth - BASE_DEPTH);
+        return Math.max(MIN_ROAD_WIDTH_PX, Math.min(MAX_ROAD_WIDTH_PX, width));
+    }
+
+    private File cachedFile(int depth, int x, int y) {
+        return cacheDir == null ? null : new File(cacheDir, tileName(depth, x, y));
+    }
+
+    /**
+     * Writes a tile to its file, through a temporary file so that concurrent readers never
+     * see a partial image. Returns whether it succeeded.
+     */
+    private static boolean write(BufferedImage img, File file) {
+        try {
+            File dir = file.getParentFile();
+            if (!dir.isDirectory() && !dir.mkdirs() && !dir.isDirectory()) {
+                throw new IOException("Could not create " + dir);
+            }
+            File tmp = File.createTempFile(file.getName(), ".tmp", dir);
+            try {
+                ImageIO.write(img, "png", tmp);
+                Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING,
+                        StandardCopyOption.ATOMIC_MOVE);
+            } finally {
+                Files.deleteIfExists(tmp.toPath());
+            }
+            return true;
+        } catch (IOException e) {
+            e.printStackTrace();
+            return false;
+        }
+    }
+}
@@ -0,0 +1,65 @@
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Synthetic graphs for tests that should not depend on the Berkeley OSM file, and helpers
+ * to check routes on them.
+ */
+class GraphFixtures {
+    private GraphFixtures() {
+    }
+
+    /**
+     * Adds n vertices, with the ids firstId to firstId + n - 1, at random points of the box
+     * from (minLon, minLat) to (maxLon, maxLat). Each vertex gets a road to a random vertex
+     * and one to the next vertex in a ring, so that they are all connected.
+     */
+    static CompactGraph.Builder addRandomRoads(CompactGraph.Builder builder, Random random,
+                                               long firstId, int n, double minLon,
+                                               double minLat, double maxLon, double maxLat) {
+        for (int i = 0; i < n; i++) {
+            builder.addNode(firstId + i, minLon + random.nextDouble() * (maxLon - minLon),
+                    minLat + random.nextDouble() * (maxLat - minLat));
+        }
+        for (int i = 0; i < n; i++) {
+            builder.addEdge(firstId + i, firstId + random.nextInt(n));
+            builder.addEdge(firstId + i, firstId + (i + 1) % n);
+        }
+        return builder;
+    }
+
+    /**
+     * Returns a connected random graph of n vertices, with the ids 0 to n - 1, spread over
+     * span degrees around (lon, lat).
+     */
+    static CompactGraph randomGraph(Random random, int n, double lon, double lat,
+                                    double span) {
+        return addRandomRoads(new CompactGraph.Builder(), random, 0, n, lon - span / 2,
+                lat - span / 2, lon + span / 2, lat + span / 2).build();
+    }
+
+    /**
+     * Returns a random graph of roads around Berkeley, with an island of a single road
+     * between the vertices 1 and 2 and a connected graph of n vertices with the ids from 100
+     * on. The island has the smallest ids, so its vertices come first in the graph.
+     */
+    static CompactGraph randomGraphWithIsland(Random random, int n) {
+        CompactGraph.Builder builder = new CompactGraph.Builder();
+        builder.addNode(1, -122.30, 37.84);
+        builder.addNode(2, -122.299, 37.84);
+        builder.addEdge(1, 2);
+        return addRandomRoads(builder, random, 100, n, -122.32, 37.82, -122.22, 37.89)
+                .build();
+    }
+
+    /**
+     * Returns the length of a route, as the sum of the great-circle distances of its edges.
+     */
+    static double routeLength(GraphDB g, List<Long> route) {
+        double length = 0;
+        for (int i = 1; i < route.size(); i++) {
+            length += g.distance(route.get(i - 1), route.get(i));
+        }
+        return length;
+    }
+}
@@ -0,0 +1,72 @@
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class TestCompactGraph {
+    @Test
+    public void testLengths() {
+        CompactGraph g = GraphFixtures.randomGraph(new Random(61), 500, -122.26, 37.87, 0.1);
+        for (int v = 0; v < g.size(); v++) {
+            for (int e = g.edgeStart(v); e < g.edgeEnd(v); e++) {
+                int w = g.target(e);
+                assertEquals(GraphDB.distance(g.lon(v), g.lat(v), g.lon(w), g.lat(w)),
+                        g.length(e), 0);
+            }
+        }
+    }
+
+    @Test
+    public void testLowerBound() {
+        Random random = new Random(62);
+        // From a city to a large region, in both hemispheres.
+        double[][] boxes = {{-122.26, 37.87, 0.1}, {-122.0, 37.5, 2}, {2.35, 48.85, 10},
+            {151.2, -33.9, 20}, {0, 0, 30}};
+        for (double[] box : boxes) {
+            CompactGraph g = GraphFixtures.randomGraph(random, 500, box[0], box[1],
+                    box[2]);
+            double worst = 0;
+            for (int i = 0; i < 20000; i++) {
+                int v = random.nextInt(g.size());
+                int w = random.nextInt(g.size());
+                double bound = g.lowerBound(v, w);
+                double dist = GraphDB.distance(g.lon(v), g.lat(v), g.lon(w), g.lat(w));
+                assertTrue(bound + " > " + dist, bound <= dist);
+                worst = Math.max(worst, dist == 0 ? 0 : 1 - bound / dist);
+            }
+            // Within a few percent in a metro area, to be useful for A*.
+            if (box[2] <= 2) {
+                assertTrue("box " + box[2] + " worst " + worst, worst < 0.05);
+            }
+            for (int v = 0; v < g.size(); v++) {
+                for (int e = g.edgeStart(v); e < g.edgeEnd(v); e++) {
+                    assertTrue(g.lowerBound(v, g.target(e)) <= g.length(e));
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testEdgeNames() {
+        CompactGraph.Builder builder = new CompactGraph.Builder();
+        for (int i = 0; i < 4; i++) {
+            builder.addNode(i, -122.26 + i * 0.001, 37.87);
+        }
+        builder.addEdge(0, 1, 25, "Bancroft Way");
+        builder.addEdge(1, 2, 25, "Bancroft Way");
+        builder.addEdge(2, 3, 25, null);
+        // A later edge between the same vertices renames it.
+        builder.addEdge(1, 0, 25, "Telegraph Avenue");
+        CompactGraph g = builder.build();
+
+        assertEquals(2, g.numNames());
+        assertEquals("Telegraph Avenue", g.name(g.edge(0, 1)));
+        assertEquals("Telegraph Avenue", g.name(g.edge(1, 0)));
+        assertEquals("Bancroft Way", g.name(g.edge(2, 1)));
+        assertEquals(g.nameId(g.edge(1, 2)), g.nameId(g.edge(2, 1)));
+        assertEquals(null, g.name(g.edge(3, 2)));
+        assertEquals(-1, g.edge(0, 3));
+    }
+}
@@ -0,0 +1,78 @@
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks that vertices are tagged with their connected components, that locations snap to
+ * the largest one, and that searches between components fail without searching.
+ */
+public class TestComponents {
+    /**
+     * A grid of 5 x 5 vertices, ids 0 to 24, and next to it an island of the three
+     * vertices 100 to 102.
+     */
+    private static GraphDB gridWithIsland() {
+        CompactGraph.Builder builder = new CompactGraph.Builder();
+        for (int i = 0; i < 25; i++) {
+            builder.addNode(i, -122.26 + (i % 5) * 0.001, 37.87 + (i / 5) * 0.001);
+            if (i % 5 > 0) {
+                builder.addEdge(i - 1, i);
+            }
+            if (i >= 5) {
+                builder.addEdge(i - 5, i);
+            }
+        }
+        for (int i = 100; i < 103; i++) {
+            builder.addNode(i, -122.25 + (i - 100) * 0.001, 37.87);
+        }
+        builder.addEdge(100, 101);
+        builder.addEdge(101, 102);
+        return new GraphDB(builder.build());
+    }
+
+    @Test
+    public void testComponents() {
+        CompactGraph g = gridWithIsland().compactGraph();
+        assertEquals(2, g.numComponents());
+        int grid = g.component(g.indexOf(0));
+        int island = g.component(g.indexOf(100));
+        assertEquals(grid, g.largestComponent());
+        assertTrue(grid != island);
+        assertTrue(g.connected(g.indexOf(0), g.indexOf(24)));
+        assertFalse(g.connected(g.indexOf(24), g.indexOf(102)));
+        assertArrayEquals(new int[]{g.indexOf(100), g.indexOf(101), g.indexOf(102)},
+                g.componentVertices(island));
+    }
+
+    @Test
+    public void testSnapsToLargestComponent() {
+        GraphDB g = gridWithIsland();
+        // Right on top of the island, whose closest grid vertex is 4.
+        assertEquals(4, g.closest(-122.25, 37.87));
+        assertEquals(12, g.closest(-122.258, 37.872));
+    }
+
+    @Test
+    public void testSearchesFailFast() {
+        GraphDB g = gridWithIsland();
+        Router.SearchResult result = Router.astarSearch(g, 0, 101);
+        assertEquals(Collections.emptyList(), result.route);
+        assertEquals(0, result.settled);
+        result = Router.bidirectionalSearch(g, 0, 101);
+        assertEquals(Collections.emptyList(), result.route);
+        assertEquals(0, result.settled);
+        result = Router.fastestSearch(g, 101, 24);
+        assertEquals(Collections.emptyList(), result.route);
+        assertEquals(0, result.settled);
+        result = ContractionHierarchy.build(g.compactGraph()).search(24, 100);
+        assertEquals(Collections.emptyList(), result.route);
+        assertEquals(0, result.settled);
+        assertEquals(Arrays.asList(100L, 101L, 102L), Router.astarSearch(g, 100, 102).route);
+    }
+}
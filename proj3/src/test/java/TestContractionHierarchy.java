@@ -0,0 +1,71 @@
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Checks that routes found with a contraction hierarchy are as short as the A* routes,
+ * and are made of original edges only, on a random graph with an island.
+ */
+public class TestContractionHierarchy {
+    private static final int NUM_TESTS = 200;
+    private static final double DISTANCE_THRESHOLD = 1e-9;
+    private static GraphDB graph;
+    private static ContractionHierarchy ch;
+    private static File file;
+    private static boolean initialized = false;
+
+    @Before
+    public void setUp() throws Exception {
+        if (initialized) {
+            return;
+        }
+        graph = new GraphDB(GraphFixtures.randomGraphWithIsland(new Random(61), 1000));
+        file = File.createTempFile("graph", ".ch");
+        file.deleteOnExit();
+        ContractionHierarchy.build(graph.compactGraph()).save(file.getPath());
+        ch = ContractionHierarchy.load(file.getPath(), graph.compactGraph());
+        initialized = true;
+    }
+
+    @Test
+    public void testSameLengthAsAstar() {
+        CompactGraph cg = graph.compactGraph();
+        Random random = new Random(62);
+        for (int i = 0; i < NUM_TESTS; i++) {
+            long start = cg.id(random.nextInt(cg.size()));
+            long dest = cg.id(random.nextInt(cg.size()));
+            List<Long> expected = Router.astarSearch(graph, start, dest).route;
+            List<Long> actual = ch.search(start, dest).route;
+            assertEquals(expected.isEmpty(), actual.isEmpty());
+            for (int j = 1; j < actual.size(); j++) {
+                graph.getEdgeName(actual.get(j - 1), actual.get(j));
+            }
+            assertEquals(GraphFixtures.routeLength(graph, expected),
+                    GraphFixtures.routeLength(graph, actual), DISTANCE_THRESHOLD);
+        }
+    }
+
+    @Test
+    public void testIsland() {
+        assertEquals(Arrays.asList(1L, 2L), ch.search(1, 2).route);
+        assertEquals(Collections.emptyList(), ch.search(2, 100).route);
+        assertEquals(Collections.emptyList(), ch.search(100, 1).route);
+    }
+
+    @Test(expected = IOException.class)
+    public void testRejectsOtherGraph() throws IOException {
+        // The same ids and numbers of vertices and edges, at other places.
+        CompactGraph other = GraphFixtures.randomGraphWithIsland(new Random(62), 1000);
+        assertEquals(graph.compactGraph().size(), other.size());
+        assertEquals(graph.compactGraph().numEdges(), other.numEdges());
+        ContractionHierarchy.load(file.getPath(), other);
+    }
+}
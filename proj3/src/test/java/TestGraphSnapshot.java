@@ -0,0 +1,103 @@
+import org.junit.Test;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Checks that a graph written by GraphSnapshot loads back identically, on a random graph
+ * with named ways of several speeds, an island and named locations.
+ */
+public class TestGraphSnapshot {
+    private static final String[] WAY_NAMES = {"Bancroft Way", "Telegraph Avenue",
+        "Shattuck Avenue", "Caf\u00e9 Strada Lane"};
+    private static final String[] LOCATION_NAMES = {"Top Dog", "Top Dog", "Topless Bar",
+        "Toyota Service", "Caf\u00e9 Strada", "Cafe Milano", "Berkeley Bowl"};
+
+    private static GraphDB randomGraph() {
+        Random random = new Random(61);
+        CompactGraph.Builder builder = new CompactGraph.Builder();
+        builder.addNode(1, -122.30, 37.84);
+        builder.addNode(2, -122.299, 37.84);
+        builder.addEdge(1, 2, 10, "Island Road");
+        GraphFixtures.addRandomRoads(builder, random, 100, 500, -122.32, 37.82, -122.22,
+                37.89);
+        for (int i = 0; i < 200; i++) {
+            String name = random.nextInt(5) == 0 ? null : WAY_NAMES[random.nextInt(4)];
+            builder.addEdge(100 + random.nextInt(500), 100 + random.nextInt(500),
+                    5 + random.nextInt(60), name);
+        }
+        GraphDB g = new GraphDB(builder.build());
+        for (int i = 0; i < LOCATION_NAMES.length; i++) {
+            g.addWordToTrie(LOCATION_NAMES[i]);
+            g.addLocation(1000 + i, -122.26 + i * 0.001, 37.87, LOCATION_NAMES[i]);
+        }
+        g.buildTrie();
+        return g;
+    }
+
+    @Test
+    public void testRoundTrip() throws Exception {
+        GraphDB expected = randomGraph();
+        File snapshot = File.createTempFile("graph", ".snapshot");
+        snapshot.deleteOnExit();
+        GraphSnapshot.write(expected, snapshot.getPath());
+        GraphDB actual = GraphSnapshot.read(snapshot.getPath());
+
+        assertEquals(toList(expected.vertices()), toList(actual.vertices()));
+        for (long v : expected.vertices()) {
+            assertEquals(expected.lon(v), actual.lon(v), 0.0);
+            assertEquals(expected.lat(v), actual.lat(v), 0.0);
+            assertEquals(toList(expected.adjacent(v)), toList(actual.adjacent(v)));
+            for (long w : expected.adjacent(v)) {
+                assertEquals(expected.getEdgeName(v, w), actual.getEdgeName(v, w));
+            }
+        }
+        CompactGraph cg = expected.compactGraph();
+        CompactGraph loaded = actual.compactGraph();
+        assertEquals(cg.numEdges(), loaded.numEdges());
+        for (int e = 0; e < cg.numEdges(); e++) {
+            assertEquals(cg.speed(e), loaded.speed(e), 0.0);
+            assertEquals(cg.length(e), loaded.length(e), 0.0);
+            assertEquals(cg.travelTime(e), loaded.travelTime(e), 0.0);
+            assertEquals(cg.name(e), loaded.name(e));
+        }
+        assertEquals(cg.numComponents(), loaded.numComponents());
+        assertEquals(cg.largestComponent(), loaded.largestComponent());
+        for (int v = 0; v < cg.size(); v++) {
+            assertEquals(cg.component(v), loaded.component(v));
+            assertEquals(cg.travelTimeLowerBound(v, 0), loaded.travelTimeLowerBound(v, 0),
+                    0.0);
+        }
+
+        Random random = new Random(62);
+        for (int i = 0; i < 200; i++) {
+            double lon = -122.32 + random.nextDouble() * 0.1;
+            double lat = 37.82 + random.nextDouble() * 0.07;
+            assertEquals(expected.closest(lon, lat), actual.closest(lon, lat));
+        }
+        assertEquals(Router.astarSearch(expected, 100, 400).route,
+                Router.astarSearch(actual, 100, 400).route);
+
+        for (String prefix : new String[]{"", "t", "top", "caf", "topdog", "bx"}) {
+            assertEquals(expected.getLocationsByPrefix(prefix),
+                    actual.getLocationsByPrefix(prefix));
+            assertEquals(expected.getLocationsByPrefix(prefix, 3),
+                    actual.getLocationsByPrefix(prefix, 3));
+        }
+        assertEquals(2, actual.getLocations("top dog").size());
+        assertEquals(expected.getLocations("Caf\u00e9 Strada"),
+                actual.getLocations("Caf\u00e9 Strada"));
+    }
+
+    private static List<Long> toList(Iterable<Long> it) {
+        List<Long> result = new ArrayList<>();
+        for (long x : it) {
+            result.add(x);
+        }
+        return result;
+    }
+}
@@ -0,0 +1,59 @@
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class TestIndexMinPQ {
+    @Test
+    public void testDecreaseKeyOrder() {
+        IndexMinPQ pq = new IndexMinPQ(5);
+        pq.insertOrDecrease(0, 5.0);
+        pq.insertOrDecrease(1, 3.0);
+        pq.insertOrDecrease(2, 4.0);
+        pq.insertOrDecrease(0, 1.0);
+        pq.insertOrDecrease(2, 9.0); // larger key is ignored
+        assertEquals(3, pq.size());
+        assertEquals(1.0, pq.minKey(), 0.0);
+        assertEquals(0, pq.delMin());
+        assertEquals(1, pq.delMin());
+        assertEquals(2, pq.delMin());
+        assertTrue(pq.isEmpty());
+    }
+
+    @Test
+    public void testClearAndReuse() {
+        IndexMinPQ pq = new IndexMinPQ(3);
+        pq.insertOrDecrease(0, 2.0);
+        pq.insertOrDecrease(1, 1.0);
+        pq.clear();
+        assertTrue(pq.isEmpty());
+        assertFalse(pq.contains(0));
+        pq.insertOrDecrease(0, 7.0);
+        assertEquals(0, pq.delMin());
+    }
+
+    @Test
+    public void testRandomAgainstSort() {
+        Random random = new Random(61);
+        int n = 1000;
+        IndexMinPQ pq = new IndexMinPQ(n);
+        double[] keys = new double[n];
+        for (int v = 0; v < n; v++) {
+            keys[v] = random.nextDouble();
+            pq.insertOrDecrease(v, keys[v]);
+        }
+        for (int v = 0; v < n; v += 3) {
+            keys[v] /= 2;
+            pq.insertOrDecrease(v, keys[v]);
+        }
+        double[] sorted = keys.clone();
+        Arrays.sort(sorted);
+        for (double expected : sorted) {
+            assertEquals(expected, keys[pq.delMin()], 0.0);
+        }
+    }
+}
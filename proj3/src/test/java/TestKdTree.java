@@ -0,0 +1,44 @@
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Compares the k-d tree backing GraphDB.closest with a linear scan over all vertices of the
+ * largest connected component.
+ */
+public class TestKdTree {
+    private static final int NUM_TESTS = 1000;
+
+    @Test
+    public void testClosestMatchesLinearScan() {
+        Random random = new Random(61);
+        GraphDB graph = new GraphDB(GraphFixtures.randomGraphWithIsland(random, 2000));
+        for (int i = 0; i < NUM_TESTS; i++) {
+            double lon = -122.32 + random.nextDouble() * 0.13;
+            double lat = 37.80 + random.nextDouble() * 0.11;
+            assertEquals(closestByScan(graph, lon, lat), graph.closest(lon, lat));
+        }
+        // Right on top of the island, whose vertices are 1 and 2.
+        assertTrue(graph.closest(-122.30, 37.84) >= 100);
+    }
+
+    private static long closestByScan(GraphDB graph, double lon, double lat) {
+        long closestNode = -1;
+        double closestDist = Double.POSITIVE_INFINITY;
+        CompactGraph g = graph.compactGraph();
+        for (long v : graph.vertices()) {
+            if (g.component(g.indexOf(v)) != g.largestComponent()) {
+                continue;
+            }
+            double dist = GraphDB.distance(graph.lon(v), graph.lat(v), lon, lat);
+            if (dist < closestDist) {
+                closestDist = dist;
+                closestNode = v;
+            }
+        }
+        return closestNode;
+    }
+}
@@ -0,0 +1,94 @@
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Checks that the ALT heuristic never overestimates and that A* with it finds routes as
+ * short as with the great-circle heuristic, on a random graph whose smallest ids are on an
+ * island.
+ */
+public class TestLandmarks {
+    private static final int NUM_TESTS = 200;
+    private static final double DISTANCE_THRESHOLD = 1e-9;
+    private static GraphDB graph;
+    private static Landmarks landmarks;
+    private static boolean initialized = false;
+
+    @Before
+    public void setUp() throws Exception {
+        if (initialized) {
+            return;
+        }
+        graph = new GraphDB(GraphFixtures.randomGraphWithIsland(new Random(61), 2000));
+        landmarks = Landmarks.select(graph.compactGraph(), 8);
+        initialized = true;
+    }
+
+    @Test
+    public void testSameLengthAsAstar() {
+        CompactGraph cg = graph.compactGraph();
+        Random random = new Random(62);
+        for (int i = 0; i < NUM_TESTS; i++) {
+            long start = cg.id(random.nextInt(cg.size()));
+            long dest = cg.id(random.nextInt(cg.size()));
+            List<Long> expected = Router.astarSearch(graph, start, dest).route;
+            List<Long> actual = Router.astarSearch(graph, landmarks, start, dest).route;
+            double length = GraphFixtures.routeLength(graph, expected);
+            assertEquals(expected.isEmpty(), actual.isEmpty());
+            assertEquals(length, GraphFixtures.routeLength(graph, actual),
+                    DISTANCE_THRESHOLD);
+            if (!expected.isEmpty()) {
+                double bound = landmarks.lowerBound(cg.indexOf(start), cg.indexOf(dest));
+                assertTrue(bound <= length + DISTANCE_THRESHOLD);
+            }
+        }
+    }
+
+    @Test
+    public void testLandmarksAvoidIslands() {
+        // Vertex 0 is on the island; landmarks there would give a bound of 0 everywhere else.
+        CompactGraph cg = graph.compactGraph();
+        int[] vertices = cg.componentVertices(cg.largestComponent());
+        Random random = new Random(63);
+        for (int i = 0; i < NUM_TESTS; i++) {
+            int v = vertices[random.nextInt(vertices.length)];
+            int t = vertices[random.nextInt(vertices.length)];
+            if (v != t) {
+                assertTrue(landmarks.lowerBound(v, t) > 0);
+            }
+        }
+    }
+
+    @Test
+    public void testSaveAndLoad() throws IOException {
+        File file = File.createTempFile("graph", ".alt");
+        file.deleteOnExit();
+        landmarks.save(file.getPath());
+        CompactGraph cg = graph.compactGraph();
+        Landmarks loaded = Landmarks.load(file.getPath(), cg);
+        Random random = new Random(64);
+        for (int i = 0; i < NUM_TESTS; i++) {
+            int v = random.nextInt(cg.size());
+            int t = random.nextInt(cg.size());
+            assertEquals(landmarks.lowerBound(v, t), loaded.lowerBound(v, t), 0.0);
+        }
+
+        // The same ids and numbers of vertices and edges, at other places.
+        CompactGraph other = GraphFixtures.randomGraphWithIsland(new Random(62), 2000);
+        assertEquals(cg.numEdges(), other.numEdges());
+        try {
+            Landmarks.load(file.getPath(), other);
+            fail("Loaded landmarks of another graph.");
+        } catch (IOException e) {
+            // Expected.
+        }
+    }
+}
@@ -0,0 +1,49 @@
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class TestLruCache {
+    @Test
+    public void testEvictsLeastRecentlyUsedByWeight() {
+        LruCache<String, String> cache = new LruCache<>(10, String::length);
+        cache.put("a", "aaaa");
+        cache.put("b", "bbbb");
+        assertEquals("aaaa", cache.get("a")); // b is now the least recently used
+        cache.put("c", "cc");
+        assertEquals(10, cache.weight());
+        cache.put("d", "d");
+        assertFalse(cache.containsKey("b"));
+        assertTrue(cache.containsKey("a"));
+        assertTrue(cache.containsKey("c"));
+        assertTrue(cache.containsKey("d"));
+        assertEquals(7, cache.weight());
+        assertEquals(1, cache.evictions());
+    }
+
+    @Test
+    public void testReplaceAndOversizedValues() {
+        LruCache<String, String> cache = new LruCache<>(5, String::length);
+        cache.put("a", "aaa");
+        cache.put("a", "a");
+        assertEquals(1, cache.weight());
+        cache.put("b", "bbbbbb");
+        assertNull(cache.get("b"));
+        assertEquals("a", cache.get("a"));
+        assertEquals(1, cache.size());
+    }
+
+    @Test
+    public void testCounters() {
+        LruCache<Integer, String> cache = new LruCache<>(100, String::length);
+        assertNull(cache.get(1));
+        cache.put(1, "one");
+        cache.get(1);
+        cache.get(1);
+        assertEquals(2, cache.hits());
+        assertEquals(1, cache.misses());
+        assertEquals(2.0 / 3, (double) cache.stats().get("hit_rate"), 1e-12);
+    }
+}
@@ -0,0 +1,92 @@
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.zip.GZIPOutputStream;
+
+public class TestOsmReader {
+    private static final String OSM = "<?xml version='1.0' encoding='UTF-8'?>\n"
+            + "<osm version=\"0.6\">\n"
+            + "  <node id=\"1\" lat=\"37.87\" lon=\"-122.26\"/>\n"
+            + "  <node id=\"2\" lat=\"37.871\" lon=\"-122.26\">\n"
+            + "    <tag k=\"name\" v=\"Caf&#233; Strada\"/>\n"
+            + "  </node>\n"
+            + "  <node id=\"3\" lat=\"37.872\" lon=\"-122.26\"/>\n"
+            + "  <node id=\"4\" lat=\"37.873\" lon=\"-122.26\"/>\n"
+            + "  <way id=\"10\">\n"
+            + "    <nd ref=\"1\"/><nd ref=\"2\"/><nd ref=\"3\"/>\n"
+            + "    <tag k=\"highway\" v=\"residential\"/>\n"
+            + "    <tag k=\"name\" v=\"Bancroft Way\"/>\n"
+            + "  </way>\n"
+            + "  <way id=\"11\">\n"
+            + "    <nd ref=\"3\"/><nd ref=\"4\"/>\n"
+            + "    <tag k=\"highway\" v=\"footway\"/>\n"
+            + "  </way>\n"
+            + "  <relation id=\"20\">\n"
+            + "    <member type=\"way\" ref=\"10\" role=\"\"/>\n"
+            + "    <tag k=\"name\" v=\"Not A Location\"/>\n"
+            + "  </relation>\n"
+            + "</osm>\n";
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void testPlainAndGzipped() throws IOException {
+        File plain = folder.newFile("map.osm.xml");
+        try (OutputStream out = new FileOutputStream(plain)) {
+            out.write(OSM.getBytes(StandardCharsets.UTF_8));
+        }
+        // Named like a plain file, to check that gzip is told from the content.
+        File gzipped = folder.newFile("map-gzipped.osm.xml");
+        try (OutputStream out = new GZIPOutputStream(new FileOutputStream(gzipped))) {
+            out.write(OSM.getBytes(StandardCharsets.UTF_8));
+        }
+        for (File file : new File[]{plain, gzipped}) {
+            OsmReader reader = new OsmReader(file.getPath());
+            GraphDB g = new GraphDB(reader);
+            assertEquals(19, reader.elements());
+            assertEquals(new HashSet<>(Arrays.asList(1L, 2L, 3L)), toSet(g.vertices()));
+            assertEquals(Collections.singletonList(2L), toList(g.adjacent(1)));
+            assertEquals("Bancroft Way", g.getEdgeName(2, 3));
+            assertEquals(Collections.singletonList("Caf\u00e9 Strada"),
+                    g.getLocationsByPrefix("caf s"));
+            assertTrue(g.getLocationsByPrefix("not").isEmpty());
+        }
+    }
+
+    @Test(expected = IOException.class)
+    public void testMalformedFile() throws IOException {
+        File file = folder.newFile("broken.osm.xml");
+        try (OutputStream out = new FileOutputStream(file)) {
+            out.write(OSM.substring(0, OSM.indexOf("</osm>")).getBytes(StandardCharsets.UTF_8));
+        }
+        GraphDB g = new GraphDB(new CompactGraph.Builder().build());
+        new OsmReader(file.getPath()).read(new GraphBuildingHandler(g));
+    }
+
+    private static HashSet<Long> toSet(Iterable<Long> ids) {
+        return new HashSet<>(toList(ids));
+    }
+
+    private static List<Long> toList(Iterable<Long> ids) {
+        List<Long> list = new ArrayList<>();
+        for (long id : ids) {
+            list.add(id);
+        }
+        return list;
+    }
+}
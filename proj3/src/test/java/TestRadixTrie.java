@@ -0,0 +1,210 @@
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+
+public class TestRadixTrie {
+    @Test
+    public void testAddAndPrefixWithKey() {
+        RadixTrie t = new RadixTrie.Builder()
+                .addWord("cat", "cat")
+                .addWord("cat", "c123at!.")
+                .addWord("dog", "dOg$")
+                .addWord("bird", "bi!rd")
+                .addWord("captain", "!cApt4ain")
+                .build();
+        Set<String> expected = new HashSet<>();
+        expected.add("cat");
+        expected.add("c123at!.");
+        Set<String> actual = new HashSet<>(t.wordsWithPrefix("cat"));
+        assertEquals(expected, actual);
+
+        expected.add("!cApt4ain");
+        actual = new HashSet<>(t.wordsWithPrefix("ca"));
+        assertEquals(expected, actual);
+        // Ends in the middle of the label "ptain".
+        assertEquals(Collections.singletonList("!cApt4ain"), t.wordsWithPrefix("capt"));
+        assertTrue(t.wordsWithPrefix("caps").isEmpty());
+        assertTrue(t.wordsWithPrefix("captains").isEmpty());
+        assertEquals(5, t.wordsWithPrefix("").size());
+    }
+
+    @Test
+    public void testEmptyAndShortKeys() {
+        assertTrue(new RadixTrie.Builder().build().wordsWithPrefix("a").isEmpty());
+        RadixTrie t = new RadixTrie.Builder()
+                .addWord("", "123")
+                .addWord("a", "A")
+                .addWord("ab", "AB")
+                .build();
+        assertEquals(3, t.wordsWithPrefix("").size());
+        assertEquals(2, t.wordsWithPrefix("a").size());
+        assertEquals(Collections.singletonList("AB"), t.wordsWithPrefix("ab"));
+    }
+
+    @Test
+    public void testMatchesTrie() {
+        Random random = new Random(61);
+        Trie trie = new Trie();
+        RadixTrie.Builder builder = new RadixTrie.Builder();
+        for (int i = 0; i < 2000; i++) {
+            String word = randomWord(random);
+            String key = GraphDB.cleanString(word);
+            trie.addWord(key, word);
+            builder.addWord(key, word);
+        }
+        RadixTrie radix = builder.build();
+        assertTrue(radix.numNodes() <= 2 * 2000 + 1);
+        for (int i = 0; i < 500; i++) {
+            String prefix = GraphDB.cleanString(randomWord(random));
+            prefix = prefix.substring(0, random.nextInt(prefix.length() + 1));
+            List<String> expected = new ArrayList<>(trie.wordsWithPrefix(prefix));
+            List<String> actual = new ArrayList<>(radix.wordsWithPrefix(prefix));
+            Collections.sort(expected);
+            Collections.sort(actual);
+            assertEquals(prefix, expected, actual);
+        }
+    }
+
+    @Test
+    public void testTopWordsByScore() {
+        RadixTrie t = new RadixTrie.Builder()
+                .addWord("cafe", "Cafe")
+                .addWord("cafe", "Cafe")
+                .addWord("cafe", "Caf\u00e9")
+                .addWord("car wash", "Car Wash")
+                .addWord("cat", "Cat")
+                .addWord("cat", "Cat")
+                .addWord("cab", "Cab")
+                .addWord("dog", "Dog")
+                .build();
+        assertEquals(Arrays.asList("Cafe", "Caf\u00e9", "Cat", "Cab"),
+                t.topWordsWithPrefix("ca", 4));
+        assertEquals(Collections.singletonList("Cafe"), t.topWordsWithPrefix("c", 1));
+        assertEquals(Arrays.asList("Cab", "Car Wash"), t.topWordsWithPrefix("ca", 10)
+                .subList(3, 5));
+        assertTrue(t.topWordsWithPrefix("cx", 3).isEmpty());
+        assertTrue(t.topWordsWithPrefix("ca", 0).isEmpty());
+    }
+
+    @Test
+    public void testTopWordsMatchesSort() {
+        Random random = new Random(62);
+        RadixTrie.Builder builder = new RadixTrie.Builder();
+        Map<String, Integer> scores = new HashMap<>();
+        for (int i = 0; i < 3000; i++) {
+            String key = GraphDB.cleanString(randomWord(random));
+            builder.addWord(key, key);
+            scores.merge(key, 1, Integer::sum);
+        }
+        RadixTrie t = builder.build();
+        for (int i = 0; i < 500; i++) {
+            String prefix = GraphDB.cleanString(randomWord(random));
+            prefix = prefix.substring(0, Math.min(prefix.length(), 2));
+            int limit = 1 + random.nextInt(20);
+            List<String> expected = new ArrayList<>();
+            for (String key : scores.keySet()) {
+                if (key.startsWith(prefix)) {
+                    expected.add(key);
+                }
+            }
+            expected.sort((a, b) -> scores.get(a).equals(scores.get(b))
+                    ? a.compareTo(b) : scores.get(b) - scores.get(a));
+            expected = expected.subList(0, Math.min(limit, expected.size()));
+            assertEquals(prefix, expected, t.topWordsWithPrefix(prefix, limit));
+        }
+    }
+
+    @Test
+    public void testFuzzyFindsTypos() {
+        RadixTrie t = new RadixTrie.Builder()
+                .addWord("telegraph avenue", "Telegraph Avenue")
+                .addWord("telegraph avenue", "Telegraph Avenue")
+                .addWord("shattuck avenue", "Shattuck Avenue")
+                .addWord("durant avenue", "Durant Avenue")
+                .build();
+        long deadline = Long.MAX_VALUE;
+        assertTrue(t.wordsWithPrefix("shatuck").isEmpty());
+        assertEquals(Collections.singletonList("Shattuck Avenue"),
+                t.fuzzyWordsWithPrefix("shatuck", 1, 5, deadline));
+        assertEquals(Collections.singletonList("Telegraph Avenue"),
+                t.fuzzyWordsWithPrefix("telegarph", 2, 5, deadline));
+        assertTrue(t.fuzzyWordsWithPrefix("telegarph", 1, 5, deadline).isEmpty());
+        // Exact matches come first.
+        assertEquals(Arrays.asList("Durant Avenue", "Telegraph Avenue", "Shattuck Avenue"),
+                t.fuzzyWordsWithPrefix("du", 2, 5, deadline));
+        assertTrue(t.fuzzyWordsWithPrefix("shatuck", 1, 5, 0).size() <= 1);
+    }
+
+    @Test
+    public void testFuzzyMatchesBruteForce() {
+        Random random = new Random(63);
+        RadixTrie.Builder builder = new RadixTrie.Builder();
+        Map<String, Integer> scores = new HashMap<>();
+        for (int i = 0; i < 1000; i++) {
+            String key = GraphDB.cleanString(randomWord(random));
+            builder.addWord(key, key);
+            scores.merge(key, 1, Integer::sum);
+        }
+        RadixTrie t = builder.build();
+        for (int i = 0; i < 300; i++) {
+            String query = GraphDB.cleanString(randomWord(random));
+            int maxEdits = 1 + random.nextInt(2);
+            int limit = 1 + random.nextInt(30);
+            Map<String, Integer> edits = new HashMap<>();
+            for (String key : scores.keySet()) {
+                int d = prefixEditDistance(query, key);
+                if (d <= maxEdits) {
+                    edits.put(key, d);
+                }
+            }
+            List<String> expected = new ArrayList<>(edits.keySet());
+            expected.sort((a, b) -> !edits.get(a).equals(edits.get(b))
+                    ? edits.get(a) - edits.get(b)
+                    : !scores.get(a).equals(scores.get(b))
+                    ? scores.get(b) - scores.get(a) : a.compareTo(b));
+            expected = expected.subList(0, Math.min(limit, expected.size()));
+            assertEquals(query, expected,
+                    t.fuzzyWordsWithPrefix(query, maxEdits, limit, Long.MAX_VALUE));
+        }
+    }
+
+    /** The fewest edits turning query into a prefix of key. */
+    private static int prefixEditDistance(String query, String key) {
+        int[][] d = new int[key.length() + 1][query.length() + 1];
+        int best = query.length();
+        for (int i = 0; i <= key.length(); i++) {
+            for (int j = 0; j <= query.length(); j++) {
+                if (i == 0 || j == 0) {
+                    d[i][j] = i + j;
+                } else {
+                    int substitute = d[i - 1][j - 1]
+                            + (key.charAt(i - 1) == query.charAt(j - 1) ? 0 : 1);
+                    d[i][j] = Math.min(substitute, Math.min(d[i - 1][j], d[i][j - 1]) + 1);
+                }
+            }
+            best = Math.min(best, d[i][query.length()]);
+        }
+        return best;
+    }
+
+    /** A short word over a small alphabet, so that many words share prefixes. */
+    private static String randomWord(Random random) {
+        StringBuilder sb = new StringBuilder();
+        int length = random.nextInt(8);
+        for (int i = 0; i < length; i++) {
+            sb.append("abcAB .1".charAt(random.nextInt(8)));
+        }
+        return sb.toString();
+    }
+}
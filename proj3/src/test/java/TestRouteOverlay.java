@@ -0,0 +1,91 @@
+import org.junit.Test;
+
+import java.awt.BasicStroke;
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class TestRouteOverlay {
+    private static final double TOLERANCE = 0.5;
+
+    @Test
+    public void testCollinearPointsAreDropped() {
+        double[] x = {0, 1, 2, 3, 4};
+        double[] y = {0, 1, 2, 3, 4};
+        boolean[] keep = RouteOverlay.simplify(x, y, TOLERANCE);
+        assertTrue(keep[0]);
+        assertTrue(keep[4]);
+        assertFalse(keep[1] || keep[2] || keep[3]);
+    }
+
+    @Test
+    public void testSimplifiedRouteStaysWithinTolerance() {
+        Random random = new Random(61);
+        int n = 2000;
+        double[] lon = new double[n];
+        double[] lat = new double[n];
+        lon[0] = -122.28;
+        lat[0] = 37.86;
+        for (int i = 1; i < n; i++) {
+            lon[i] = lon[i - 1] + (random.nextDouble() - 0.3) * 1e-5;
+            lat[i] = lat[i - 1] + (random.nextDouble() - 0.3) * 1e-5;
+        }
+        RouteOverlay overlay = new RouteOverlay(lon, lat);
+        for (int depth : new int[]{0, 3, 7}) {
+            int size = overlay.simplifiedSize(depth);
+            assertTrue(size >= 2 && size <= n);
+            for (int i = 0; i < n; i++) {
+                double px = RouteOverlay.pixelX(lon[i], depth);
+                double py = RouteOverlay.pixelY(lat[i], depth);
+                double best = Double.POSITIVE_INFINITY;
+                for (int j = 0; j + 1 < size; j++) {
+                    double[] a = overlay.simplifiedPixel(depth, j);
+                    double[] b = overlay.simplifiedPixel(depth, j + 1);
+                    best = Math.min(best, RouteOverlay.segmentDistance(px, py,
+                            a[0], a[1], b[0], b[1]));
+                }
+                assertTrue("depth " + depth + " point " + i, best <= TOLERANCE + 1e-3);
+            }
+        }
+        assertTrue(overlay.simplifiedSize(0) < overlay.simplifiedSize(7));
+    }
+
+    @Test
+    public void testDrawsOnlyWhereTheRouteIs() {
+        // A straight route along the middle row of the d1_x0_y0 tile.
+        double midLat = (MapServer.ROOT_ULLAT + (MapServer.ROOT_ULLAT + MapServer.ROOT_LRLAT) / 2)
+                / 2;
+        double[] lon = {MapServer.ROOT_ULLON, (MapServer.ROOT_ULLON + MapServer.ROOT_LRLON) / 2};
+        double[] lat = {midLat, midLat};
+        RouteOverlay overlay = new RouteOverlay(lon, lat);
+        int depth = 1;
+
+        BufferedImage onRoute = drawTile(overlay, depth, 0, 0);
+        assertEquals(Color.RED.getRGB(), onRoute.getRGB(128, 128));
+        assertEquals(0, onRoute.getRGB(128, 10));
+
+        BufferedImage offRoute = drawTile(overlay, depth, 0, 1);
+        for (int y = 0; y < MapServer.TILE_SIZE; y += 8) {
+            for (int x = 0; x < MapServer.TILE_SIZE; x += 8) {
+                assertEquals(0, offRoute.getRGB(x, y));
+            }
+        }
+    }
+
+    private static BufferedImage drawTile(RouteOverlay overlay, int depth, int x, int y) {
+        BufferedImage img = new BufferedImage(MapServer.TILE_SIZE, MapServer.TILE_SIZE,
+                BufferedImage.TYPE_INT_ARGB);
+        Graphics2D g2d = img.createGraphics();
+        g2d.setColor(Color.RED);
+        g2d.setStroke(new BasicStroke(5));
+        overlay.draw(g2d, depth, x * MapServer.TILE_SIZE, y * MapServer.TILE_SIZE,
+                MapServer.TILE_SIZE, MapServer.TILE_SIZE, 5);
+        g2d.dispose();
+        return img;
+    }
+}
@@ -0,0 +1,70 @@
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+
+public class TestRouteStore {
+    private long now = 0;
+
+    @Test
+    public void testSessionsAreIndependent() {
+        RouteStore store = new RouteStore(10, 1000, () -> now);
+        long va = store.put("a", Arrays.asList(1L, 2L, 3L));
+        long vb = store.put("b", Arrays.asList(4L, 5L));
+        assertNotEquals(va, vb);
+        assertEquals(Arrays.asList(1L, 2L, 3L), store.get("a").nodes());
+        assertEquals(Arrays.asList(4L, 5L), store.get("b").nodes());
+        assertEquals(va, store.get("a").version());
+
+        store.clear("a");
+        assertTrue(store.get("a").nodes().isEmpty());
+        assertEquals(0, store.get("a").version());
+        assertEquals(Arrays.asList(4L, 5L), store.get("b").nodes());
+        assertEquals(Collections.emptyList(), store.get("nobody").nodes());
+    }
+
+    @Test
+    public void testIdleRoutesExpire() {
+        RouteStore store = new RouteStore(10, 1000, () -> now);
+        store.put("a", Arrays.asList(1L, 2L));
+        store.put("b", Arrays.asList(3L, 4L));
+        now = 800;
+        assertEquals(Arrays.asList(1L, 2L), store.get("a").nodes());
+        now = 1500;
+        assertEquals(Arrays.asList(1L, 2L), store.get("a").nodes());
+        assertTrue(store.get("b").nodes().isEmpty());
+        assertEquals(1, store.size());
+    }
+
+    @Test
+    public void testLeastRecentlyUsedAreEvicted() {
+        RouteStore store = new RouteStore(10, Long.MAX_VALUE, () -> now);
+        for (int i = 0; i < 10; i++) {
+            now = i;
+            store.put("s" + i, Arrays.asList((long) i));
+        }
+        now = 10;
+        store.get("s0");
+        now = 11;
+        store.put("s10", Arrays.asList(10L));
+        assertTrue(store.size() <= 10);
+        assertEquals(Arrays.asList(0L), store.get("s0").nodes());
+        assertEquals(Arrays.asList(10L), store.get("s10").nodes());
+        assertTrue(store.get("s1").nodes().isEmpty());
+    }
+
+    @Test
+    public void testNewRouteSurvivesEvictionInSameMillisecond() {
+        RouteStore store = new RouteStore(10, Long.MAX_VALUE, () -> now);
+        for (int i = 0; i < 25; i++) {
+            store.put("s" + i, Arrays.asList((long) i));
+            assertEquals(Arrays.asList((long) i), store.get("s" + i).nodes());
+            assertTrue(store.size() <= 10);
+            assertTrue(store.size() >= Math.min(i + 1, 9));
+        }
+    }
+}
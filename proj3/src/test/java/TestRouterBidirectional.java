@@ -0,0 +1,71 @@
+import org.junit.Before;
+import org.junit.Test;
+
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Checks that bidirectional A* finds routes as short as Router.shortestPath on the
+ * TestRouter fixtures, between the same endpoints.
+ */
+public class TestRouterBidirectional {
+    private static final String PARAMS_FILE = "path_params.txt";
+    private static final int NUM_TESTS = 8;
+    private static final double DISTANCE_THRESHOLD = 1e-9;
+    private static final String OSM_DB_PATH = "../library-sp18/data/berkeley-2018.osm.xml";
+    private static final String OSM_DB_PATH_TINY = "../library-sp18/data/tiny-clean.osm.xml";
+    private static GraphDB graph;
+    private static GraphDB graphTiny;
+    private static boolean initialized = false;
+
+    @Before
+    public void setUp() throws Exception {
+        if (initialized) {
+            return;
+        }
+        graph = new GraphDB(OSM_DB_PATH);
+        graphTiny = new GraphDB(OSM_DB_PATH_TINY);
+        initialized = true;
+    }
+
+    @Test
+    public void testSameLengthAsShortestPath() throws Exception {
+        List<String> lines = Files.readAllLines(Paths.get(PARAMS_FILE), Charset.defaultCharset());
+        int lineIdx = 2; // ignore comment lines
+        for (int i = 0; i < NUM_TESTS; i++) {
+            double startLon = Double.parseDouble(lines.get(lineIdx));
+            double startLat = Double.parseDouble(lines.get(lineIdx + 1));
+            double endLon = Double.parseDouble(lines.get(lineIdx + 2));
+            double endLat = Double.parseDouble(lines.get(lineIdx + 3));
+            lineIdx += 4;
+            assertSameRoute(graph, startLon, startLat, endLon, endLat);
+        }
+    }
+
+    @Test
+    public void testTiny() {
+        assertSameRoute(graphTiny, 0.2, 38.2, 0.6, 38.6);
+        assertSameRoute(graphTiny, 0.2, 38.2, 0.1, 38.1);
+        assertSameRoute(graphTiny, 0.4, 38.1, 0.4, 38.6);
+        assertSameRoute(graphTiny, 0.6, 38.6, 0.5, 38.5);
+        assertSameRoute(graphTiny, 0.6, 38.6, 0.6, 38.6);
+    }
+
+    private static void assertSameRoute(GraphDB g, double startLon, double startLat,
+                                        double endLon, double endLat) {
+        List<Long> expected = Router.shortestPath(g, startLon, startLat, endLon, endLat);
+        List<Long> actual = Router.shortestPathBidirectional(g, startLon, startLat,
+                endLon, endLat);
+        assertEquals(expected.size() > 0, actual.size() > 0);
+        if (!expected.isEmpty()) {
+            assertEquals(expected.get(0), actual.get(0));
+            assertEquals(expected.get(expected.size() - 1), actual.get(actual.size() - 1));
+        }
+        assertEquals(GraphFixtures.routeLength(g, expected), GraphFixtures.routeLength(g, actual),
+                DISTANCE_THRESHOLD);
+    }
+}
@@ -0,0 +1,78 @@
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Runs many routing queries from several threads at once and checks that every result is
+ * identical to running the same query alone.
+ */
+public class TestRouterConcurrent {
+    private static final int NUM_QUERIES = 400;
+    private static final int NUM_THREADS = 8;
+    private static final String OSM_DB_PATH = "../library-sp18/data/berkeley-2018.osm.xml";
+    private static GraphDB graph;
+    private static boolean initialized = false;
+
+    @Before
+    public void setUp() throws Exception {
+        if (initialized) {
+            return;
+        }
+        graph = new GraphDB(OSM_DB_PATH);
+        initialized = true;
+    }
+
+    /** Shared search state used to corrupt paths badly enough to loop, hence the timeout. */
+    @Test(timeout = 60000)
+    public void testConcurrentMatchesSequential() throws Exception {
+        Random random = new Random(61);
+        List<double[]> queries = new ArrayList<>();
+        for (int i = 0; i < NUM_QUERIES; i++) {
+            queries.add(new double[]{-122.30 + random.nextDouble() * 0.09,
+                37.82 + random.nextDouble() * 0.07,
+                -122.30 + random.nextDouble() * 0.09,
+                37.82 + random.nextDouble() * 0.07});
+        }
+
+        List<List<Long>> expected = new ArrayList<>();
+        for (double[] q : queries) {
+            expected.add(route(q, expected.size()));
+        }
+
+        ExecutorService pool = Executors.newFixedThreadPool(NUM_THREADS);
+        try {
+            List<Future<List<Long>>> actual = new ArrayList<>();
+            for (int i = 0; i < queries.size(); i++) {
+                double[] q = queries.get(i);
+                int kind = i;
+                Callable<List<Long>> task = () -> route(q, kind);
+                actual.add(pool.submit(task));
+            }
+            for (int i = 0; i < queries.size(); i++) {
+                assertEquals("Query " + i + " differs when run concurrently",
+                        expected.get(i), actual.get(i).get());
+            }
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    /**
+     * Alternates between the search algorithms, so that they also run side by side.
+     */
+    private static List<Long> route(double[] q, int kind) {
+        if (kind % 2 == 0) {
+            return Router.shortestPath(graph, q[0], q[1], q[2], q[3]);
+        }
+        return Router.shortestPathBidirectional(graph, q[0], q[1], q[2], q[3]);
+    }
+}
@@ -0,0 +1,113 @@
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks travel time routing: speeds parsed from maxspeed tags, and Router.fastestSearch
+ * against Dijkstra by travel time on random graphs.
+ */
+public class TestRouterTime {
+    private static final double TIME_THRESHOLD = 1e-6;
+
+    @Test
+    public void testParseSpeed() {
+        assertEquals(25, GraphBuildingHandler.parseSpeed("25 mph"), 1e-4);
+        assertEquals(25, GraphBuildingHandler.parseSpeed("25mph"), 1e-4);
+        assertEquals(31.0686, GraphBuildingHandler.parseSpeed("50"), 1e-4);
+        assertEquals(31.0686, GraphBuildingHandler.parseSpeed("50 km/h"), 1e-4);
+        assertEquals(11.5078, GraphBuildingHandler.parseSpeed("10 knots"), 1e-4);
+        assertTrue(Float.isNaN(GraphBuildingHandler.parseSpeed("signals")));
+        assertTrue(Float.isNaN(GraphBuildingHandler.parseSpeed("none")));
+        assertTrue(Float.isNaN(GraphBuildingHandler.parseSpeed("0")));
+    }
+
+    @Test
+    public void testPrefersFastRoads() {
+        // A short residential street from 1 to 3, and a longer detour on a fast road.
+        CompactGraph.Builder builder = new CompactGraph.Builder();
+        builder.addNode(1, -122.26, 37.87);
+        builder.addNode(2, -122.25, 37.88);
+        builder.addNode(3, -122.24, 37.87);
+        builder.addNode(4, -122.255, 37.87);
+        builder.addEdge(1, 4, 10);
+        builder.addEdge(4, 3, 10);
+        builder.addEdge(1, 2, 65);
+        builder.addEdge(2, 3, 65);
+        GraphDB g = new GraphDB(builder.build());
+        assertEquals(Arrays.asList(1L, 4L, 3L), Router.astarSearch(g, 1, 3).route);
+        assertEquals(Arrays.asList(1L, 2L, 3L), Router.fastestSearch(g, 1, 3).route);
+    }
+
+    @Test
+    public void testMatchesDijkstra() {
+        Random random = new Random(61);
+        CompactGraph.Builder builder = new CompactGraph.Builder();
+        int n = 300;
+        for (int i = 0; i < n; i++) {
+            builder.addNode(i, -122.3 + random.nextDouble() * 0.1,
+                    37.8 + random.nextDouble() * 0.1);
+        }
+        for (int i = 0; i < 3 * n; i++) {
+            builder.addEdge(random.nextInt(n), random.nextInt(n),
+                    5 + random.nextInt(60));
+        }
+        GraphDB g = new GraphDB(builder.build());
+        CompactGraph cg = g.compactGraph();
+        for (int i = 0; i < 100; i++) {
+            int src = random.nextInt(cg.size());
+            int dest = random.nextInt(cg.size());
+            double[] dist = dijkstra(cg, src);
+            List<Long> route = Router.fastestSearch(g, cg.id(src), cg.id(dest)).route;
+            if (Double.isInfinite(dist[dest])) {
+                assertTrue(route.isEmpty());
+            } else {
+                assertEquals(dist[dest], travelTime(cg, route), TIME_THRESHOLD);
+            }
+        }
+    }
+
+    private static double[] dijkstra(CompactGraph g, int src) {
+        double[] dist = new double[g.size()];
+        boolean[] done = new boolean[g.size()];
+        Arrays.fill(dist, Double.POSITIVE_INFINITY);
+        dist[src] = 0;
+        for (int round = 0; round < g.size(); round++) {
+            int v = -1;
+            for (int u = 0; u < g.size(); u++) {
+                if (!done[u] && (v < 0 || dist[u] < dist[v])) {
+                    v = u;
+                }
+            }
+            if (Double.isInfinite(dist[v])) {
+                break;
+            }
+            done[v] = true;
+            for (int e = g.edgeStart(v); e < g.edgeEnd(v); e++) {
+                dist[g.target(e)] = Math.min(dist[g.target(e)], dist[v] + g.travelTime(e));
+            }
+        }
+        return dist;
+    }
+
+    /** The travel time of a route, taking the fastest edge between consecutive vertices. */
+    private static double travelTime(CompactGraph g, List<Long> route) {
+        double time = 0;
+        for (int i = 1; i < route.size(); i++) {
+            int v = g.indexOf(route.get(i - 1));
+            int w = g.indexOf(route.get(i));
+            double best = Double.POSITIVE_INFINITY;
+            for (int e = g.edgeStart(v); e < g.edgeEnd(v); e++) {
+                if (g.target(e) == w) {
+                    best = Math.min(best, g.travelTime(e));
+                }
+            }
+            time += best;
+        }
+        return time;
+    }
+}
@@ -0,0 +1,75 @@
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class TestSingleFlight {
+    private static final int NUM_CALLERS = 8;
+
+    @Test(timeout = 10000)
+    public void testConcurrentCallsShareOneComputation() throws Exception {
+        SingleFlight<String, String> flight = new SingleFlight<>();
+        AtomicInteger runs = new AtomicInteger();
+        CountDownLatch release = new CountDownLatch(1);
+        ExecutorService pool = Executors.newFixedThreadPool(NUM_CALLERS);
+        List<Future<String>> results = new ArrayList<>();
+        for (int i = 0; i < NUM_CALLERS; i++) {
+            results.add(pool.submit(() -> flight.execute("key", () -> {
+                runs.incrementAndGet();
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    throw new IllegalStateException(e);
+                }
+                return "result";
+            })));
+        }
+        // Wait until every caller has either started the computation or joined it.
+        while (flight.executions() + flight.coalesced() < NUM_CALLERS) {
+            Thread.sleep(1);
+        }
+        release.countDown();
+        for (Future<String> result : results) {
+            assertEquals("result", result.get());
+        }
+        pool.shutdown();
+        pool.awaitTermination(1, TimeUnit.SECONDS);
+        assertEquals(1, runs.get());
+        assertEquals(1, flight.executions());
+        assertEquals(NUM_CALLERS - 1, flight.coalesced());
+    }
+
+    @Test
+    public void testSequentialCallsRecompute() {
+        SingleFlight<Integer, Integer> flight = new SingleFlight<>();
+        AtomicInteger runs = new AtomicInteger();
+        assertEquals(1, (int) flight.execute(1, runs::incrementAndGet));
+        assertEquals(2, (int) flight.execute(1, runs::incrementAndGet));
+        assertEquals(2, flight.executions());
+        assertEquals(0, flight.coalesced());
+    }
+
+    @Test
+    public void testExceptionsPropagateAndAreNotRemembered() {
+        SingleFlight<String, String> flight = new SingleFlight<>();
+        try {
+            flight.execute("key", () -> {
+                throw new IllegalArgumentException("bad");
+            });
+            fail("Expected the computation's exception.");
+        } catch (IllegalArgumentException e) {
+            assertTrue(e.getMessage().contains("bad"));
+        }
+        assertEquals("ok", flight.execute("key", () -> "ok"));
+    }
+}
@@ -0,0 +1,55 @@
+import org.junit.Test;
+
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class TestTilePrefetcher {
+    private final Set<String> cache = ConcurrentHashMap.newKeySet();
+
+    private void awaitIdle(TilePrefetcher prefetcher) throws InterruptedException {
+        while ((long) prefetcher.stats().get("completed")
+                < (long) prefetcher.stats().get("scheduled")) {
+            Thread.sleep(1);
+        }
+    }
+
+    @Test(timeout = 10000)
+    public void testPrefetchesRingAndNeighbouringDepths() throws InterruptedException {
+        TilePrefetcher prefetcher = new TilePrefetcher(cache::contains, cache::add, 7);
+        // The 2x2 box of tiles (2, 2) to (3, 3) at depth 3.
+        prefetcher.prefetch(3, 2, 2, 3, 3);
+        awaitIdle(prefetcher);
+
+        // 12 around the box, 1 above it and 16 below it.
+        assertEquals(12 + 1 + 16, cache.size());
+        assertTrue(cache.contains("d3_x1_y1.png"));
+        assertTrue(cache.contains("d3_x4_y4.png"));
+        assertFalse(cache.contains("d3_x2_y2.png"));
+        assertTrue(cache.contains("d2_x1_y1.png"));
+        assertTrue(cache.contains("d4_x4_y4.png"));
+        assertTrue(cache.contains("d4_x7_y7.png"));
+
+        // Panning right by one tile requests two prefetched tiles.
+        prefetcher.prefetch(3, 3, 2, 4, 3);
+        assertEquals(2L, prefetcher.stats().get("hits"));
+        awaitIdle(prefetcher);
+        assertTrue(cache.contains("d3_x5_y2.png"));
+    }
+
+    @Test(timeout = 10000)
+    public void testSkipsCachedAndOutOfRangeTiles() throws InterruptedException {
+        TilePrefetcher prefetcher = new TilePrefetcher(cache::contains, cache::add, 1);
+        cache.add("d1_x0_y0.png");
+        cache.add("d1_x1_y0.png");
+        // The root tile has nothing around it or above it, and two of the four tiles below
+        // it are cached already.
+        prefetcher.prefetch(0, 0, 0, 0, 0);
+        awaitIdle(prefetcher);
+        assertEquals(2L, prefetcher.stats().get("scheduled"));
+        assertEquals(4, cache.size());
+    }
+}
@@ -0,0 +1,84 @@
+import org.junit.Test;
+
+import java.awt.image.BufferedImage;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class TestTileRenderer {
+    private static final int NUM_NODES = 2000;
+
+    /** A random graph of roads inside the root tile. */
+    private static CompactGraph randomGraph() {
+        return GraphFixtures.addRandomRoads(new CompactGraph.Builder(), new Random(61), 0,
+                NUM_NODES, MapServer.ROOT_ULLON, MapServer.ROOT_LRLAT, MapServer.ROOT_LRLON,
+                MapServer.ROOT_ULLAT).build();
+    }
+
+    @Test
+    public void testQueryMatchesScan() {
+        CompactGraph g = randomGraph();
+        EdgeGrid grid = new EdgeGrid(g);
+        Random random = new Random(62);
+        for (int q = 0; q < 200; q++) {
+            double lon0 = -122.31 + random.nextDouble() * 0.1;
+            double lat0 = 37.81 + random.nextDouble() * 0.08;
+            double lon1 = lon0 + random.nextDouble() * 0.02;
+            double lat1 = lat0 + random.nextDouble() * 0.02;
+
+            List<String> found = new ArrayList<>();
+            grid.query(lon0, lat0, lon1, lat1, (v, w) -> found.add(v + "-" + w));
+            List<String> expected = new ArrayList<>();
+            for (int v = 0; v < g.size(); v++) {
+                for (int e = g.edgeStart(v); e < g.edgeEnd(v); e++) {
+                    int w = g.target(e);
+                    if (v < w && Math.max(g.lon(v), g.lon(w)) >= lon0
+                            && Math.min(g.lon(v), g.lon(w)) <= lon1
+                            && Math.max(g.lat(v), g.lat(w)) >= lat0
+                            && Math.min(g.lat(v), g.lat(w)) <= lat1) {
+                        expected.add(v + "-" + w);
+                    }
+                }
+            }
+            Collections.sort(found);
+            Collections.sort(expected);
+            assertEquals(expected, found);
+        }
+    }
+
+    @Test
+    public void testTileNames() {
+        assertEquals("d3_x2_y5.png", TileRenderer.tileName(3, 2, 5));
+        assertArrayEquals(new int[]{3, 2, 5}, TileRenderer.parseTileName("d3_x2_y5.png"));
+        assertNull(TileRenderer.parseTileName("d3_x2.png"));
+        assertNull(TileRenderer.parseTileName("../d3_x2_y5.png"));
+        assertTrue(TileRenderer.isTile(3, 7, 7));
+        assertFalse(TileRenderer.isTile(3, 8, 0));
+        assertFalse(TileRenderer.isTile(-1, 0, 0));
+    }
+
+    @Test
+    public void testRendersRoadsAtAnyDepth() {
+        TileRenderer renderer = new TileRenderer(randomGraph(), null);
+        for (int depth : new int[]{0, 7, 12}) {
+            int last = (1 << depth) - 1;
+            BufferedImage tile = renderer.render(depth, last / 2, last / 2);
+            assertEquals(MapServer.TILE_SIZE, tile.getWidth());
+            int background = tile.getRGB(0, 0);
+            boolean drewRoad = false;
+            for (int y = 0; y < tile.getHeight() && !drewRoad; y++) {
+                for (int x = 0; x < tile.getWidth() && !drewRoad; x++) {
+                    drewRoad = tile.getRGB(x, y) != background;
+                }
+            }
+            assertTrue("depth " + depth, drewRoad);
+        }
+    }
+}